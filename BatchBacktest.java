@@ -0,0 +1,171 @@
+/* Donald W. Strong
+ *
+ *  This class runs the split detection and investment strategy from StockTrading for every ticker in the company
+ *  table and prints one summary table. Each ticker goes through two stages:
+ *      fetch = the pricevolume query and split detection, run on a small thread pool with one thread per pooled
+ *              database connection, so the number of concurrent queries stays bounded (or, when the prices come
+ *              from a flat file, on the common fork-join pool)
+ *      strategy = the investment strategy, run on the common fork-join pool so it uses every core
+ *  The stages are chained per ticker, so while one ticker's prices are being fetched, the strategy is already running
+ *  on tickers that arrived earlier. With "batch.translog=true" in the params file every ticker's transactions go to
+ *  one transaction log, written in the background (see TransactionLog).
+ */
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+public class BatchBacktest {
+
+    /* Default number of database connections (and concurrent queries) used by a batch run */
+    static final int DEFAULT_CONNECTIONS = 4;
+
+    /* One row of the summary table */
+    static class Summary {
+        final String ticker;
+        final int splits;
+        final int tradingDays;
+        final TradingResult result;
+        final String error;
+
+        Summary(String ticker, int splits, int tradingDays, TradingResult result, String error) {
+            this.ticker = ticker;
+            this.splits = splits;
+            this.tradingDays = tradingDays;
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    /* Method that runs every ticker in the company table and prints the summary table. The number of pooled
+       connections can be set with e.g. "connections=8" in the params file. 'log' receives every transaction, or is
+       null for no transaction log.
+     */
+    public static void run(Properties connectprops, StrategyParameters params, TransactionLog log)
+            throws SQLException, InterruptedException {
+        int connections = Integer.parseInt(connectprops.getProperty("connections",
+                String.valueOf(DEFAULT_CONNECTIONS)).trim());
+        long startTime = System.nanoTime();
+        ConnectionPool pool = new ConnectionPool(connectprops, connections);
+        ExecutorService fetchers = Executors.newFixedThreadPool(pool.size());
+
+        try {
+            run(listTickers(pool), ticker -> fetch(pool, ticker), fetchers,
+                    String.format("%d connections and ", pool.size()), params, log, startTime);
+        }
+        finally {
+            fetchers.shutdown();
+            pool.close();
+        }
+    }
+
+    /* Same as above, but reads the prices from a thread safe source (such as a flat file) instead of the database.
+       Both stages run on the common fork-join pool.
+     */
+    public static void run(PriceDataSource source, StrategyParameters params, TransactionLog log)
+            throws SQLException {
+        if (!source.isThreadSafe()) {
+            throw new IllegalArgumentException("Batch runs need a price source that can be shared between threads");
+        }
+        long startTime = System.nanoTime();
+        run(new ArrayList<String>(source.companies().keySet()), ticker -> fetch(source, ticker),
+                ForkJoinPool.commonPool(), "", params, log, startTime);
+    }
+
+    /* Runs the two stages for every ticker and prints the summary table */
+    private static void run(List<String> tickers, Function<String, PriceSeries> fetch, Executor fetchers,
+                            String resources, StrategyParameters params, TransactionLog log, long startTime) {
+        ForkJoinPool strategies = ForkJoinPool.commonPool();
+        System.out.printf("Running investment strategy for %d tickers on %s%d cores...%n", tickers.size(),
+                resources, strategies.getParallelism());
+
+        /* Start every ticker right away, the pools bound how many actually run at once */
+        List<CompletableFuture<Summary>> summaries = new ArrayList<CompletableFuture<Summary>>();
+        for (String ticker : tickers) {
+            summaries.add(CompletableFuture
+                    .supplyAsync(() -> fetch.apply(ticker), fetchers)
+                    .thenApplyAsync(series -> backtest(series, params, log), strategies)
+                    .exceptionally(ex -> failed(ticker, ex)));
+        }
+
+        /* Print the rows in ticker order as they complete */
+        DecimalFormat df = new DecimalFormat("#.##");
+        double totalCash = 0;
+        System.out.printf("%-8s %7s %13s %13s %14s%n", "Ticker", "Splits", "Trading days", "Transactions",
+                "Net cash");
+        for (CompletableFuture<Summary> future : summaries) {
+            Summary summary = future.join();
+            if (summary.error != null) {
+                System.out.printf("%-8s %s%n", summary.ticker, summary.error);
+            }
+            else if (!summary.result.executed) {
+                System.out.printf("%-8s %7d %13d %13s %14s%n", summary.ticker, summary.splits,
+                        summary.tradingDays, "-", "-");
+            }
+            else {
+                System.out.printf("%-8s %7d %13d %13d %14s%n", summary.ticker, summary.splits,
+                        summary.tradingDays, summary.result.transCount, df.format(summary.result.cash));
+                totalCash += summary.result.cash;
+            }
+        }
+        System.out.printf("Total net cash: %s (%d tickers in %d ms)%n%n", df.format(totalCash), tickers.size(),
+                (System.nanoTime() - startTime) / 1000000);
+    }
+
+    /* Method that returns every ticker in the company table in alphabetical order */
+    static List<String> listTickers(ConnectionPool pool) throws SQLException, InterruptedException {
+        PriceQueries queries = pool.borrow();
+        try {
+            return new ArrayList<String>(queries.companies().keySet());
+        }
+        finally {
+            pool.release(queries);
+        }
+    }
+
+    /* Fetch stage: reads the split adjusted series for a ticker over a pooled connection */
+    private static PriceSeries fetch(ConnectionPool pool, String ticker) {
+        PriceQueries queries = null;
+        try {
+            queries = pool.borrow();
+            return queries.priceVolume(ticker);
+        }
+        catch (SQLException | InterruptedException ex) {
+            throw new CompletionException(ex);
+        }
+        finally {
+            if (queries != null) {
+                pool.release(queries);
+            }
+        }
+    }
+
+    /* Fetch stage for a thread safe source */
+    private static PriceSeries fetch(PriceDataSource source, String ticker) {
+        try {
+            return source.priceVolume(ticker);
+        }
+        catch (SQLException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /* Strategy stage: runs the investment strategy over a series */
+    private static Summary backtest(PriceSeries series, StrategyParameters params, TransactionLog log) {
+        TradingResult result = StockTrading.runStrategy(series, new SimpleMovingAverage(params.window), params, log);
+        return new Summary(series.ticker, series.splits().size(), series.size(), result, null);
+    }
+
+    private static Summary failed(String ticker, Throwable ex) {
+        Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+        return new Summary(ticker, 0, 0, null, "failed: " + cause);
+    }
+}
@@ -0,0 +1,69 @@
+/* Donald W. Strong
+ *
+ *  This class defines a fixed size pool of database connections. All connections are opened up front with the same
+ *  properties used by StockTrading (see readerparams.txt) and each one is handed out wrapped in its PriceQueries, so
+ *  prepared statements are reused across borrows. A thread borrows a connection for the duration of one query and
+ *  hands it back afterwards; if every connection is in use, borrow() waits until one is released. This bounds the
+ *  number of concurrent queries against the database no matter how many threads are running.
+ */
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class ConnectionPool implements AutoCloseable {
+
+    /* Variable declarations */
+    private final ArrayList<PriceQueries> all = new ArrayList<PriceQueries>();
+    private final BlockingQueue<PriceQueries> idle;
+
+    /* Constructor that opens 'size' connections to the database described by 'connectprops' */
+    public ConnectionPool(Properties connectprops, int size) throws SQLException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + size);
+        }
+        idle = new ArrayBlockingQueue<PriceQueries>(size);
+        String dburl = connectprops.getProperty("dburl");
+        try {
+            for (int i = 0; i < size; i++) {
+                PriceQueries queries = new PriceQueries(DriverManager.getConnection(dburl, connectprops));
+                all.add(queries);
+                idle.add(queries);
+            }
+        }
+        catch (SQLException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /* Takes a connection out of the pool, waiting for one to be released if they are all in use */
+    public PriceQueries borrow() throws InterruptedException {
+        return idle.take();
+    }
+
+    /* Returns a connection obtained from borrow() to the pool */
+    public void release(PriceQueries queries) {
+        idle.add(queries);
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    /* Closes every connection in the pool */
+    public void close() {
+        for (PriceQueries queries : all) {
+            try {
+                queries.close();
+            }
+            catch (SQLException ex) {
+                System.out.printf("SQLException while closing connection: %s%n", ex.getMessage());
+            }
+        }
+        all.clear();
+        idle.clear();
+    }
+}
@@ -0,0 +1,50 @@
+/* Donald W. Strong
+ *
+ *  This class defines an exponential moving average with the usual smoothing factor of 2 / (length + 1). The average
+ *  is seeded with the simple average of the first 'length' values and is then updated with a single multiply-add per
+ *  day.
+ */
+public class ExponentialMovingAverage implements Indicator {
+
+    /* Variable declarations */
+    private final int length;
+    private final double alpha;
+    private double ema;
+    private int count;
+
+    public ExponentialMovingAverage(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Window length must be at least 1: " + length);
+        }
+        this.length = length;
+        this.alpha = 2.0 / (length + 1);
+    }
+
+    public void update(double value) {
+        /* Still filling the seed window, keep a plain running mean */
+        if (count < length) {
+            count++;
+            ema += (value - ema) / count;
+        }
+        else {
+            ema += alpha * (value - ema);
+        }
+    }
+
+    public double value() {
+        return ema;
+    }
+
+    public boolean isReady() {
+        return count >= length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void reset() {
+        ema = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,703 @@
+/* Donald W. Strong
+ *
+ *  This class answers price queries from a flat file export of the pricevolume table instead of the database. Each
+ *  line holds one trading day, with fields separated by tabs (as written by Entry.entryToString) or commas:
+ *      ticker, date (YYYY.MM.DD or YYYY-MM-DD), opening, high, low and closing price[, any further fields]
+ *  Prices are unadjusted, as in the database, and are split adjusted the same way as the pricevolume queries. The
+ *  lines of a ticker may come in any order, although files grouped by ticker (as a database dump is) are fastest. A
+ *  header line is skipped. Company names can be given in a second file of "ticker, name" lines; without one, the
+ *  ticker is used as the name.
+ *
+ *  The file is memory mapped (in 1GB chunks, so files of any size can be used) and never copied into Strings:
+ *      open() = one pass over the bytes that only looks for the end of each ticker and line, eight bytes at a time,
+ *               and records where each ticker's lines are
+ *      priceVolume() = parses the dates and prices of one ticker's lines straight from the mapped bytes
+ *  The first date range query of a ticker also keeps its splits and the date and start of every 64th line (see
+ *  Days), so later ranges parse only the lines around the range instead of the ticker's whole history.
+ *  A FlatFilePriceSource can be queried from several threads at once.
+ */
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FlatFilePriceSource implements PriceDataSource {
+
+    /* Size of each mapped chunk, and how far each chunk's mapping reaches into the next one so that a line starting
+       in a chunk can always be read from it
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+    private static final int MAX_LINE = 1 << 16;
+
+    /* Lines between the checkpoints of a ticker's Days */
+    private static final int CHECKPOINT_LINES = 64;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /* Powers of ten that are exact as doubles */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /* Where the lines of one ticker are in the file: runs of consecutive lines, as [start, end) byte offsets */
+    static class Lines {
+        final String ticker;
+        long[] runs = new long[2];
+        int runCount;
+        int rows;
+
+        Lines(String ticker) {
+            this.ticker = ticker;
+        }
+
+        void add(long start, long end, int lines) {
+            if (runCount > 0 && runs[2 * runCount - 1] == start) {
+                runs[2 * runCount - 1] = end;
+            }
+            else {
+                if (2 * runCount == runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[2 * runCount] = start;
+                runs[2 * runCount + 1] = end;
+                runCount++;
+            }
+            rows += lines;
+        }
+    }
+
+    /* What date range queries of one ticker keep between them: its splits (which give the divisor for any day, as in
+       SplitIndex) and, if its lines are in date order (oldest or most recent first), every CHECKPOINT_LINES-th line
+       as a checkpoint holding the line's date, run and start. A range is found by binary search over the checkpoints
+       and read by walking the lines from the nearest one. A ticker whose lines are in no order has no checkpoints,
+       and its ranges are cut out of its full history.
+     */
+    static class Days {
+        final SplitIndex.TickerSplits splits;
+        final int firstDate;
+        final int lastDate;
+        final int rows;
+        final boolean ascending;
+        final int[] dates;
+        final int[] runs;
+        final long[] positions;
+
+        Days(SplitIndex.TickerSplits splits, int firstDate, int lastDate, int rows, boolean ascending, int[] dates,
+             int[] runs, long[] positions) {
+            this.splits = splits;
+            this.firstDate = firstDate;
+            this.lastDate = lastDate;
+            this.rows = rows;
+            this.ascending = ascending;
+            this.dates = dates;
+            this.runs = runs;
+            this.positions = positions;
+        }
+
+        /* Number of leading checkpoints that are on or before 'date' in the order of the lines */
+        int countThrough(int date) {
+            int low = 0;
+            int high = dates.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ascending ? dates[middle] <= date : dates[middle] >= date) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /* Steps through the lines of one ticker in file order, skipping blank lines */
+    private class LineWalk {
+        final Lines lines;
+        int run;
+        long next;
+        long position;
+        MappedByteBuffer chunk;
+        int at;
+        int textEnd;
+
+        LineWalk(Lines lines, int run, long position) {
+            this.lines = lines;
+            this.run = run;
+            this.next = position;
+        }
+
+        /* Moves to the next line, or returns false after the ticker's last line */
+        boolean next() {
+            while (true) {
+                while (next >= lines.runs[2 * run + 1]) {
+                    if (++run == lines.runCount) {
+                        return false;
+                    }
+                    next = lines.runs[2 * run];
+                }
+                position = next;
+                chunk = chunk(position);
+                at = offsetIn(position);
+                int lineEnd = lineEnd(chunk, at, position);
+                textEnd = (lineEnd > at && chunk.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+                next = position + (lineEnd - at) + 1;
+                if (textEnd > at) {
+                    return true;
+                }
+            }
+        }
+
+        int date() {
+            int field = indexOf(chunk, at, textEnd, separator) + 1;
+            return parseDate(chunk, field, fieldEnd(chunk, field, textEnd), position);
+        }
+
+        void parse(int row, int[] dates, double[] open, double[] high, double[] low, double[] close) {
+            parseLine(chunk, at, textEnd, row, dates, open, high, low, close, position);
+        }
+    }
+
+    /* Variable declarations */
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+    private final byte separator;
+    private final Map<String, Lines> index;
+    private final Map<String, String> names;
+    private final Map<String, Days> dayIndex = new ConcurrentHashMap<String, Days>();
+
+    private FlatFilePriceSource(Path file, FileChannel channel, MappedByteBuffer[] chunks, long size, byte separator,
+                                Map<String, Lines> index, Map<String, String> names) {
+        this.file = file;
+        this.channel = channel;
+        this.chunks = chunks;
+        this.size = size;
+        this.separator = separator;
+        this.index = index;
+        this.names = names;
+    }
+
+    /* Maps the price file and indexes the lines of every ticker. 'companiesFile' may be null. */
+    public static FlatFilePriceSource open(Path pricesFile, Path companiesFile) throws IOException {
+        long startTime = System.nanoTime();
+        FileChannel channel = FileChannel.open(pricesFile, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(size - start, CHUNK_SIZE + MAX_LINE));
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            FlatFilePriceSource source = new FlatFilePriceSource(pricesFile, channel, chunks, size,
+                    separatorOf(chunks, size), new HashMap<String, Lines>(), readNames(companiesFile));
+            int rows = source.buildIndex();
+            System.out.printf("Indexed %d trading days of %d tickers in %s (%d ms)%n", rows, source.index.size(),
+                    pricesFile, (System.nanoTime() - startTime) / 1000000);
+            return source;
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /* Tab separated unless the first line has a comma and no tab */
+    private static byte separatorOf(MappedByteBuffer[] chunks, long size) {
+        int limit = (int) Math.min(size, MAX_LINE);
+        for (int i = 0; i < limit; i++) {
+            byte b = chunks[0].get(i);
+            if (b == '\t' || b == '\n') {
+                break;
+            }
+            if (b == ',') {
+                return ',';
+            }
+        }
+        return '\t';
+    }
+
+    /* Reads the optional "ticker, name" file into a map keyed by upper case ticker */
+    private static Map<String, String> readNames(Path companiesFile) throws IOException {
+        Map<String, String> names = new HashMap<String, String>();
+        if (companiesFile == null) {
+            return names;
+        }
+        for (String line : Files.readAllLines(companiesFile, StandardCharsets.UTF_8)) {
+            int split = line.indexOf('\t') >= 0 ? line.indexOf('\t') : line.indexOf(',');
+            if (split > 0) {
+                names.put(key(line.substring(0, split)), line.substring(split + 1).trim());
+            }
+        }
+        return names;
+    }
+
+    /* The one pass over the file done by open(). Only the ticker field of each line is looked at: while it stays the
+       same (compared byte by byte with the line before), the lines are counted into the same run. Returns the number
+       of lines indexed.
+     */
+    private int buildIndex() throws IOException {
+        byte[] ticker = new byte[0];
+        Lines current = null;
+        long runStart = 0;
+        int runLines = 0;
+        int rows = 0;
+        long position = skipHeader();
+
+        while (position < size) {
+            MappedByteBuffer chunk = chunk(position);
+            int at = offsetIn(position);
+            int lineEnd = lineEnd(chunk, at, position);
+            int tickerEnd = indexOf(chunk, at, lineEnd, separator);
+            long next = position + (lineEnd - at) + 1;
+
+            if (tickerEnd < 0 || tickerEnd == at) {
+                /* Blank lines are skipped, anything else without a ticker is an error */
+                if (lineEnd - at > 1 || (lineEnd - at == 1 && chunk.get(at) != '\r')) {
+                    throw new IOException("Expected ticker" + (char) separator + "date" + (char) separator +
+                            "prices at byte " + position + " of " + file);
+                }
+            }
+            else if (!sameBytes(chunk, at, tickerEnd, ticker)) {
+                if (current != null) {
+                    current.add(runStart, position, runLines);
+                }
+                ticker = bytes(chunk, at, tickerEnd);
+                String name = new String(ticker, StandardCharsets.UTF_8).trim();
+                current = index.get(key(name));
+                if (current == null) {
+                    current = new Lines(name);
+                    index.put(key(name), current);
+                }
+                runStart = position;
+                runLines = 1;
+                rows++;
+            }
+            else {
+                runLines++;
+                rows++;
+            }
+            position = next;
+        }
+        if (current != null) {
+            current.add(runStart, Math.min(position, size), runLines);
+        }
+        return rows;
+    }
+
+    /* Returns the offset of the first data line: 0, or the start of the second line if the first one's date field
+       does not start with a digit
+     */
+    private long skipHeader() throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer chunk = chunks[0];
+        int lineEnd = lineEnd(chunk, 0, 0);
+        int tickerEnd = indexOf(chunk, 0, lineEnd, separator);
+        if (tickerEnd >= 0 && tickerEnd + 1 < lineEnd) {
+            byte first = chunk.get(tickerEnd + 1);
+            if (first >= '0' && first <= '9') {
+                return 0;
+            }
+        }
+        return lineEnd + 1;
+    }
+
+    public List<String> companyNames(String ticker) {
+        Lines lines = index.get(key(ticker));
+        if (lines == null) {
+            return Collections.emptyList();
+        }
+        String name = names.get(key(ticker));
+        return Collections.singletonList((name == null) ? lines.ticker : name);
+    }
+
+    public Map<String, String> companies() {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Lines lines : index.values()) {
+            String name = names.get(key(lines.ticker));
+            sorted.put(lines.ticker, (name == null) ? lines.ticker : name);
+        }
+        return new LinkedHashMap<String, String>(sorted);
+    }
+
+    /* Parses the ticker's lines and runs them through the split detector, most recent day first, the way
+       PriceQueries ingests the rows of a pricevolume query. Like the query, the series keeps the ticker as it was
+       asked for.
+     */
+    public PriceSeries priceVolume(String ticker) {
+        Lines lines = index.get(key(ticker));
+        if (lines == null) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+
+        int rows = lines.rows;
+        int[] dates = new int[rows];
+        double[] open = new double[rows];
+        double[] high = new double[rows];
+        double[] low = new double[rows];
+        double[] close = new double[rows];
+        int row = 0;
+        for (int run = 0; run < lines.runCount; run++) {
+            long position = lines.runs[2 * run];
+            long end = lines.runs[2 * run + 1];
+            while (position < end) {
+                MappedByteBuffer chunk = chunk(position);
+                int at = offsetIn(position);
+                int lineEnd = lineEnd(chunk, at, position);
+                int textEnd = (lineEnd > at && chunk.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+                if (textEnd > at) {
+                    parseLine(chunk, at, textEnd, row++, dates, open, high, low, close, position);
+                }
+                position += (lineEnd - at) + 1;
+            }
+        }
+
+        /* Feed the days most recent first, sorting them first if the file did not list them in date order */
+        Integer[] order = null;
+        boolean ascending = true;
+        boolean descending = true;
+        for (int i = 1; i < row; i++) {
+            ascending &= dates[i - 1] < dates[i];
+            descending &= dates[i - 1] > dates[i];
+        }
+        if (!ascending && !descending) {
+            order = new Integer[row];
+            for (int i = 0; i < row; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(dates[b], dates[a]));
+        }
+
+        Metrics.record(Metrics.Phase.INGEST, started, allocated);
+        Metrics.ingested(row);
+
+        started = System.nanoTime();
+        allocated = Metrics.allocatedBytes();
+        PriceSeries.Builder series = new PriceSeries.Builder(ticker, row);
+        SplitDetector splits = new SplitDetector();
+        for (int k = 0; k < row; k++) {
+            int i = (order != null) ? order[k] : ascending ? row - 1 - k : k;
+            double divisor = splits.next(dates[i], open[i], close[i]);
+            series.prepend(dates[i], open[i] / divisor, high[i] / divisor, low[i] / divisor, close[i] / divisor);
+        }
+        Metrics.record(Metrics.Phase.SPLITS, started, allocated);
+        return series.build(splits.splits());
+    }
+
+    public PriceSeries priceVolume(String ticker, String beginningDate, String endDate) {
+        try {
+            return priceVolume(ticker, TradeDate.parse(beginningDate), TradeDate.parse(endDate));
+        }
+        catch (IllegalArgumentException ex) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+    }
+
+    /* Returns the days from 'beginDate' through 'endDate' (epoch days, inclusive). Only the lines from the checkpoint
+       before the range to the end of the range are parsed, and each day is divided by the divisor the ticker's splits
+       give for it, which is the divisor the full history applies to it. The series carries the splits that fall
+       between two days of the range.
+     */
+    public PriceSeries priceVolume(String ticker, int beginDate, int endDate) {
+        Lines lines = index.get(key(ticker));
+        Days known = (lines == null) ? null : days(lines);
+        if (known == null) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+        if (known.dates == null) {
+            return priceVolume(ticker).between(beginDate, endDate);
+        }
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+
+        int start = Math.max(0, known.countThrough(known.ascending ? beginDate : endDate) - 1);
+        int end = known.countThrough(known.ascending ? endDate : beginDate);
+        int bound = Math.max(0, (int) Math.min(known.rows, (long) end * CHECKPOINT_LINES) - start * CHECKPOINT_LINES);
+        int[] dates = new int[bound];
+        double[] open = new double[bound];
+        double[] high = new double[bound];
+        double[] low = new double[bound];
+        double[] close = new double[bound];
+
+        /* Lines that are most recent first are parsed into the arrays from the back, so the days end up oldest first */
+        LineWalk walk = new LineWalk(lines, known.runs[start], known.positions[start]);
+        int row = 0;
+        while (row < bound && walk.next()) {
+            int date = walk.date();
+            if (known.ascending ? date > endDate : date < beginDate) {
+                break;
+            }
+            if (date >= beginDate && date <= endDate) {
+                int i = known.ascending ? row : bound - 1 - row;
+                walk.parse(i, dates, open, high, low, close);
+                double divisor = known.splits.divisorOn(date);
+                open[i] /= divisor;
+                high[i] /= divisor;
+                low[i] /= divisor;
+                close[i] /= divisor;
+                row++;
+            }
+        }
+        int offset = known.ascending ? 0 : bound - row;
+        List<SplitEvent> splits = (row < 2) ? Collections.<SplitEvent>emptyList()
+                : known.splits.between(dates[offset], dates[offset + row - 1]);
+        Metrics.record(Metrics.Phase.INGEST, started, allocated);
+        Metrics.ingested(row);
+        return new PriceSeries(ticker, dates, open, high, low, close, offset, row, splits);
+    }
+
+    /* Known without parsing once the ticker has Days, unless the range cuts into its history, in which case the
+       range is read once to find them
+     */
+    public int[] firstAndLastDay(String ticker, int beginDate, int endDate) {
+        Lines lines = index.get(key(ticker));
+        Days known = (lines == null) ? null : days(lines);
+        if (known == null || beginDate > known.lastDate || endDate < known.firstDate) {
+            return null;
+        }
+        if (beginDate <= known.firstDate && endDate >= known.lastDate) {
+            return new int[] {known.firstDate, known.lastDate};
+        }
+        PriceSeries range = priceVolume(ticker, beginDate, endDate);
+        return range.isEmpty() ? null : new int[] {range.date(0), range.date(range.size() - 1)};
+    }
+
+    /* Returns the ticker's Days, building them the first time they are asked for: the full history is read once for
+       its splits, and the dates of the lines are read once more for the checkpoints. Returns null if the ticker has
+       no prices.
+     */
+    private Days days(Lines lines) {
+        Days known = dayIndex.get(key(lines.ticker));
+        if (known != null) {
+            return known;
+        }
+        PriceSeries history = priceVolume(lines.ticker);
+        if (history.isEmpty()) {
+            return null;
+        }
+        int last = history.size() - 1;
+        SplitIndex.TickerSplits splits = new SplitIndex.TickerSplits(history.date(last), history.open(last),
+                history.close(last), history.splits());
+
+        int checkpoints = (lines.rows + CHECKPOINT_LINES - 1) / CHECKPOINT_LINES;
+        int[] dates = new int[checkpoints];
+        int[] runs = new int[checkpoints];
+        long[] positions = new long[checkpoints];
+        boolean ascending = true;
+        boolean descending = true;
+        int previous = 0;
+        int row = 0;
+        LineWalk walk = new LineWalk(lines, 0, lines.runs[0]);
+        while (walk.next()) {
+            int date = walk.date();
+            if (row > 0) {
+                ascending &= previous < date;
+                descending &= previous > date;
+            }
+            if (row % CHECKPOINT_LINES == 0) {
+                dates[row / CHECKPOINT_LINES] = date;
+                runs[row / CHECKPOINT_LINES] = walk.run;
+                positions[row / CHECKPOINT_LINES] = walk.position;
+            }
+            previous = date;
+            row++;
+        }
+        known = (ascending || descending)
+                ? new Days(splits, history.date(0), history.date(last), row, ascending, dates, runs, positions)
+                : new Days(splits, history.date(0), history.date(last), row, true, null, null, null);
+        Days raced = dayIndex.putIfAbsent(key(lines.ticker), known);
+        return (raced != null) ? raced : known;
+    }
+
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* Parses the date and four prices of the line chunk[at, lineEnd) into row 'row' of the arrays */
+    private void parseLine(MappedByteBuffer chunk, int at, int lineEnd, int row, int[] dates, double[] open,
+                           double[] high, double[] low, double[] close, long position) {
+        int field = indexOf(chunk, at, lineEnd, separator) + 1;
+        int fieldEnd = fieldEnd(chunk, field, lineEnd);
+        dates[row] = parseDate(chunk, field, fieldEnd, position);
+
+        field = fieldEnd + 1;
+        fieldEnd = fieldEnd(chunk, field, lineEnd);
+        open[row] = parseDouble(chunk, field, fieldEnd);
+        field = fieldEnd + 1;
+        fieldEnd = fieldEnd(chunk, field, lineEnd);
+        high[row] = parseDouble(chunk, field, fieldEnd);
+        field = fieldEnd + 1;
+        fieldEnd = fieldEnd(chunk, field, lineEnd);
+        low[row] = parseDouble(chunk, field, fieldEnd);
+        field = fieldEnd + 1;
+        fieldEnd = fieldEnd(chunk, field, lineEnd);
+        close[row] = parseDouble(chunk, field, fieldEnd);
+    }
+
+    /* Parses the date field chunk[field, fieldEnd) of the line at 'position' into an epoch day */
+    private int parseDate(MappedByteBuffer chunk, int field, int fieldEnd, long position) {
+        if (fieldEnd - field != 10) {
+            throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD at byte " + position +
+                    " of " + file);
+        }
+        return TradeDate.epochDay(digits(chunk, field, 4), digits(chunk, field + 5, 2), digits(chunk, field + 8, 2));
+    }
+
+    private int fieldEnd(MappedByteBuffer chunk, int from, int lineEnd) {
+        if (from > lineEnd) {
+            throw new IllegalArgumentException("Expected ticker, date and four prices on each line of " + file);
+        }
+        int end = indexOf(chunk, from, lineEnd, separator);
+        return (end < 0) ? lineEnd : end;
+    }
+
+    private static int digits(MappedByteBuffer chunk, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = chunk.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /* Parses a decimal number such as 123.45 straight from the bytes. With at most 18 digits and a value below 2^53,
+       the digits and the power of ten are both exact doubles, so one division gives the same (correctly rounded)
+       result as Double.parseDouble. Anything else (exponents, more digits) is handed to Double.parseDouble.
+     */
+    static double parseDouble(MappedByteBuffer chunk, int from, int to) {
+        int i = from;
+        boolean negative = (i < to && chunk.get(i) == '-');
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte b = chunk.get(i);
+            if (b >= '0' && b <= '9' && digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (point) {
+                    decimals++;
+                }
+            }
+            else if (b == '.' && !point) {
+                point = true;
+            }
+            else {
+                return slowParseDouble(chunk, from, to);
+            }
+        }
+        if (digits == 0 || mantissa >= (1L << 53) || decimals >= POWERS_OF_TEN.length) {
+            return slowParseDouble(chunk, from, to);
+        }
+        double value = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(MappedByteBuffer chunk, int from, int to) {
+        return Double.parseDouble(new String(bytes(chunk, from, to), StandardCharsets.US_ASCII).trim());
+    }
+
+    private static byte[] bytes(MappedByteBuffer chunk, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = chunk.get(from + i);
+        }
+        return bytes;
+    }
+
+    /* Returns the offset of the '\n' ending the line that starts at chunk[at], or the end of the file if the last
+       line has no '\n'
+     */
+    private int lineEnd(MappedByteBuffer chunk, int at, long position) {
+        int end = indexOf(chunk, at, chunk.limit(), (byte) '\n');
+        if (end >= 0) {
+            return end;
+        }
+        if (position - at + chunk.limit() >= size) {
+            return chunk.limit();
+        }
+        throw new IllegalStateException("Line longer than " + MAX_LINE + " bytes at byte " + position + " of " + file);
+    }
+
+    /* Returns the offset of the first 'b' in chunk[from, to), or -1. Looks at eight bytes at a time: XORing a word
+       with 'b' in every byte turns each match into a zero byte, which the (x - 0x01..) & ~x & 0x80.. test finds.
+     */
+    static int indexOf(MappedByteBuffer chunk, int from, int to, byte b) {
+        long pattern = ONES * (b & 0xff);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = chunk.getLong(i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (chunk.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameBytes(MappedByteBuffer chunk, int from, int to, byte[] bytes) {
+        if (to - from != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(from + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer chunk(long position) {
+        return chunks[(int) (position / CHUNK_SIZE)];
+    }
+
+    private static int offsetIn(long position) {
+        return (int) (position % CHUNK_SIZE);
+    }
+
+    private static String key(String ticker) {
+        return ticker.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,24 @@
+/* Donald W. Strong
+ *
+ *  This interface outlines a streaming indicator that is used by the investment strategy in StockTrading. An
+ *  indicator is fed one value per trading day (usually a closing price) through update() and always reports its
+ *  current reading through value(). Every implementation does a constant amount of work per update, so the cost of
+ *  walking a series does not depend on the length of the window being tracked.
+ */
+public interface Indicator {
+
+    /* Feeds the next value (in chronological order) into the indicator */
+    void update(double value);
+
+    /* Returns the current reading of the indicator. Only meaningful once isReady() returns true */
+    double value();
+
+    /* Returns true once the indicator has seen enough values to fill its window */
+    boolean isReady();
+
+    /* Returns the number of values the indicator looks back over */
+    int length();
+
+    /* Clears all state so the indicator can be reused on another series */
+    void reset();
+}
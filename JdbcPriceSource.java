@@ -0,0 +1,115 @@
+/* Donald W. Strong
+ *
+ *  This class answers price queries from the company and pricevolume tables of the database (see PriceQueries). Full
+ *  history queries keep the split index up to date, and date range queries use it so that only the rows inside the
+ *  range are read (see SplitIndex). The full histories of the last few tickers read are kept, and a date range of one
+ *  of them is cut out of it by binary search (see PriceSeries.between) without reading the range from the database.
+ *  A kept history is only used while it is current: every range query first brings the ticker's split index up to
+ *  date, which reads just the rows after the last scanned day, and a history that ends before that day is dropped.
+ *
+ *  Like PriceQueries, a JdbcPriceSource is not thread safe.
+ */
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class JdbcPriceSource implements PriceDataSource {
+
+    /* Number of full histories kept for date range queries */
+    static final int RECENT_HISTORIES = 8;
+
+    /* Variable declarations */
+    private final PriceQueries queries;
+    private final SplitIndex splitIndex;
+    private final LinkedHashMap<String, PriceSeries> recent;
+
+    public JdbcPriceSource(PriceQueries queries, SplitIndex splitIndex) {
+        this.queries = queries;
+        this.splitIndex = splitIndex;
+        /* Access ordered, so the eldest entry is always the least recently used one */
+        this.recent = new LinkedHashMap<String, PriceSeries>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, PriceSeries> eldest) {
+                return size() > RECENT_HISTORIES;
+            }
+        };
+    }
+
+    public PriceQueries queries() {
+        return queries;
+    }
+
+    public List<String> companyNames(String ticker) throws SQLException {
+        return queries.companyNames(ticker);
+    }
+
+    public Map<String, String> companies() throws SQLException {
+        return queries.companies();
+    }
+
+    /* A full history query gives the ticker's complete split history, so the split index is updated from it. The
+       series is kept for later date range queries of the ticker.
+     */
+    public PriceSeries priceVolume(String ticker) throws SQLException {
+        PriceSeries series = queries.priceVolume(ticker);
+        splitIndex.record(series);
+        saveSplitIndex();
+        if (!series.isEmpty()) {
+            recent.put(ticker.toUpperCase(Locale.ROOT), series);
+        }
+        return series;
+    }
+
+    /* Looks up the ticker's splits (detecting any new ones). If the ticker's full history is kept and still ends on
+       the last scanned day, the range is cut out of it. Otherwise only the rows in the range are read.
+     */
+    public PriceSeries priceVolume(String ticker, String beginningDate, String endDate) throws SQLException {
+        String key = ticker.toUpperCase(Locale.ROOT);
+        SplitIndex.TickerSplits splits = splitIndex.update(queries, ticker);
+        if (splits == null) {
+            recent.remove(key);
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+        saveSplitIndex();
+        PriceSeries history = recent.get(key);
+        if (history != null && history.date(history.size() - 1) == splits.lastDate) {
+            try {
+                return history.between(TradeDate.parse(beginningDate), TradeDate.parse(endDate));
+            }
+            /* Dates that are not YYYY.MM.DD are left for the database to compare, as before */
+            catch (IllegalArgumentException ex) {
+            }
+        }
+        else if (history != null) {
+            /* Rows were added since the history was read, and they may have brought a split with them */
+            recent.remove(key);
+        }
+        return queries.priceVolume(ticker, beginningDate, endDate, splits);
+    }
+
+    public int[] firstAndLastDay(String ticker, int beginDate, int endDate) throws SQLException {
+        return queries.firstAndLastDay(ticker, beginDate, endDate);
+    }
+
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /* Method that writes the split index back to disk. The index is only a cache, so a failure is reported and
+       otherwise ignored.
+     */
+    private void saveSplitIndex() {
+        try {
+            splitIndex.save();
+        }
+        catch (IOException ex) {
+            System.out.printf("Could not save split index: %s%n", ex.getMessage());
+        }
+    }
+
+    public void close() throws SQLException {
+        queries.close();
+    }
+}
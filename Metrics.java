@@ -0,0 +1,385 @@
+/* Donald W. Strong
+ *
+ *  This class collects timings and counts for every step between a query and its result, so a slow ticker can be
+ *  traced to the step that is slow. Each phase keeps a latency histogram and a histogram of the bytes allocated by
+ *  the thread while it ran:
+ *      company name = looking up the company name (getCompanyName)
+ *      query = executing a pricevolume query, up to the first row being available
+ *      ingest = reading and parsing the rows of one ticker
+ *      splits = detecting the stock splits of one ticker and dividing its prices by them (for a split scan, which
+ *               reads rows only to detect splits, the whole row loop; see SplitIndex)
+ *      strategy = the investment strategy over one series (runStrategy)
+ *      request = one request of the HTTP service, end to end (see QueryService)
+ *  along with the rows read per query, the size of each series in memory, and counts of JDBC round trips (one per
+ *  statement executed, the rows are streamed back), series cache hits and misses, and trades.
+ *
+ *  Everything is recorded once per phase per ticker, never per row or per trading day, so the metrics are always on.
+ *  They can be read over JMX (see MetricsMXBean) and dumped periodically with "metrics.interval=60" (seconds) in the
+ *  params file, as plain text or, with "metrics.format=json", one line of JSON per dump. Dumps are appended to
+ *  metrics.txt or metrics.json (or the file named by "metrics.file=..."), and a last one is written when the program
+ *  exits.
+ */
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public final class Metrics {
+
+    /* Name the metrics are registered under in the platform MBean server */
+    static final String OBJECT_NAME = "stocktrading:type=Metrics";
+
+    /* A trading day in a PriceSeries: the epoch day and four prices */
+    static final int BYTES_PER_DAY = Integer.BYTES + 4 * Double.BYTES;
+
+    /* The phases of the query to result pipeline (see the top of the file) */
+    public enum Phase {
+        COMPANY_NAME("company name"),
+        QUERY("query"),
+        INGEST("ingest"),
+        SPLITS("splits"),
+        STRATEGY("strategy"),
+        REQUEST("request");
+
+        public final String label;
+        final Histogram nanos = new Histogram();
+        final Histogram allocated = new Histogram();
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /* Variable declarations */
+    static final Histogram ROWS_PER_QUERY = new Histogram();
+    static final Histogram SERIES_BYTES = new Histogram();
+    static final LongAdder JDBC_ROUND_TRIPS = new LongAdder();
+    static final LongAdder CACHE_HITS = new LongAdder();
+    static final LongAdder CACHE_MISSES = new LongAdder();
+    static final LongAdder TRADES = new LongAdder();
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+    private static volatile long resetNanos = System.nanoTime();
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    /* Returns the number of bytes allocated so far by the current thread, or 0 if the JVM can't tell. Pass it to
+       record() along with System.nanoTime() taken at the start of a phase.
+     */
+    public static long allocatedBytes() {
+        return (THREADS == null) ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /* Records one run of 'phase' that started at 'startNanos' (System.nanoTime) when the thread had allocated
+       'startAllocated' bytes (allocatedBytes)
+     */
+    public static void record(Phase phase, long startNanos, long startAllocated) {
+        phase.nanos.record(System.nanoTime() - startNanos);
+        if (THREADS != null) {
+            phase.allocated.record(allocatedBytes() - startAllocated);
+        }
+    }
+
+    /* Records the rows read for one ticker, which also gives the size of its series */
+    public static void ingested(int rows) {
+        ROWS_PER_QUERY.record(rows);
+        SERIES_BYTES.record((long) rows * BYTES_PER_DAY);
+    }
+
+    /* Method that registers the MBean and starts the periodic dump, as set in the params file (see the top of the
+       file). "metrics.jmx=false" leaves JMX out.
+     */
+    public static synchronized void start(Properties props) {
+        if (Boolean.parseBoolean(props.getProperty("metrics.jmx", "true").trim())) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+            }
+            catch (JMException ex) {
+                System.out.printf("Could not register metrics with JMX: %s%n", ex.getMessage());
+            }
+        }
+
+        long interval = Long.parseLong(props.getProperty("metrics.interval", "0").trim());
+        if (interval <= 0 || dumper != null) {
+            return;
+        }
+        boolean json = props.getProperty("metrics.format", "text").trim().equalsIgnoreCase("json");
+        Path file = Paths.get(props.getProperty("metrics.file", json ? "metrics.json" : "metrics.txt").trim());
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file, json), interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(file, json)));
+    }
+
+    /* Appends the current report to 'file'. A failed dump is reported and otherwise ignored. */
+    static void dump(Path file, boolean json) {
+        String report = json ? json() + System.lineSeparator() : text() + System.lineSeparator();
+        try {
+            Files.write(file, report.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch (IOException ex) {
+            System.out.printf("Could not write metrics to %s: %s%n", file, ex.getMessage());
+        }
+    }
+
+    /* Returns the report as a table */
+    public static String text() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "Metrics at %s (over %.1f s)%n", now(),
+                (System.nanoTime() - resetNanos) / 1e9));
+        text.append(String.format(Locale.ROOT, "%-13s %9s %10s %10s %10s %10s %10s %12s%n", "Phase", "Calls",
+                "Mean us", "p50 us", "p90 us", "p99 us", "Max us", "Alloc/call"));
+        for (Phase phase : Phase.values()) {
+            PhaseSummary s = new PhaseSummary(phase);
+            text.append(String.format(Locale.ROOT, "%-13s %9d %10.1f %10.1f %10.1f %10.1f %10.1f %12d%n",
+                    phase.label, s.count, s.meanMicros, s.p50Micros, s.p90Micros, s.p99Micros, s.maxMicros,
+                    s.allocatedBytesPerCall));
+        }
+        appendSummary(text, "Rows per query", new Summary(ROWS_PER_QUERY));
+        appendSummary(text, "Series bytes", new Summary(SERIES_BYTES));
+        text.append(String.format(Locale.ROOT, "JDBC round trips %d, cache hits %d, cache misses %d, trades %d%n",
+                JDBC_ROUND_TRIPS.sum(), CACHE_HITS.sum(), CACHE_MISSES.sum(), TRADES.sum()));
+        return text.toString();
+    }
+
+    private static void appendSummary(StringBuilder text, String name, Summary s) {
+        text.append(String.format(Locale.ROOT, "%-15s %d (mean %.0f, p50 %d, p90 %d, p99 %d, max %d)%n", name + ":",
+                s.count, s.mean, s.p50, s.p90, s.p99, s.max));
+    }
+
+    /* Returns the report as one line of JSON */
+    public static String json() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"time\":\"").append(now()).append("\",\"seconds\":")
+                .append(String.format(Locale.ROOT, "%.1f", (System.nanoTime() - resetNanos) / 1e9))
+                .append(",\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            PhaseSummary s = new PhaseSummary(phase);
+            json.append((phase.ordinal() == 0) ? "\"" : ",\"").append(phase.label).append("\":{\"count\":")
+                    .append(s.count).append(",\"meanMicros\":").append(micros(s.meanMicros))
+                    .append(",\"p50Micros\":").append(micros(s.p50Micros))
+                    .append(",\"p90Micros\":").append(micros(s.p90Micros))
+                    .append(",\"p99Micros\":").append(micros(s.p99Micros))
+                    .append(",\"maxMicros\":").append(micros(s.maxMicros))
+                    .append(",\"allocatedBytesPerCall\":").append(s.allocatedBytesPerCall).append('}');
+        }
+        json.append("},\"rowsPerQuery\":");
+        appendSummary(json, new Summary(ROWS_PER_QUERY));
+        json.append(",\"seriesBytes\":");
+        appendSummary(json, new Summary(SERIES_BYTES));
+        return json.append(",\"jdbcRoundTrips\":").append(JDBC_ROUND_TRIPS.sum())
+                .append(",\"cacheHits\":").append(CACHE_HITS.sum())
+                .append(",\"cacheMisses\":").append(CACHE_MISSES.sum())
+                .append(",\"trades\":").append(TRADES.sum()).append('}').toString();
+    }
+
+    private static void appendSummary(StringBuilder json, Summary s) {
+        json.append("{\"count\":").append(s.count).append(",\"mean\":").append(Math.round(s.mean))
+                .append(",\"p50\":").append(s.p50).append(",\"p90\":").append(s.p90)
+                .append(",\"p99\":").append(s.p99).append(",\"max\":").append(s.max).append('}');
+    }
+
+    private static String micros(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String now() {
+        return LocalDateTime.now().withNano(0).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    /* Forgets everything recorded so far */
+    public static void reset() {
+        for (Phase phase : Phase.values()) {
+            phase.nanos.reset();
+            phase.allocated.reset();
+        }
+        ROWS_PER_QUERY.reset();
+        SERIES_BYTES.reset();
+        JDBC_ROUND_TRIPS.reset();
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+        TRADES.reset();
+        resetNanos = System.nanoTime();
+    }
+
+    /* The HotSpot extension of ThreadMXBean gives per thread allocation counts; other JVMs go without */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+                if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                    return counter;
+                }
+            }
+        }
+        catch (LinkageError ex) {
+            /* jdk.management is not available */
+        }
+        return null;
+    }
+
+    /* Summary of one phase, in microseconds (shown as a composite value over JMX) */
+    public static class PhaseSummary {
+
+        /* Variable declarations */
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p90Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+        private final long allocatedBytesPerCall;
+
+        PhaseSummary(Phase phase) {
+            count = phase.nanos.count();
+            meanMicros = phase.nanos.mean() / 1000;
+            p50Micros = phase.nanos.percentile(0.50) / 1000.0;
+            p90Micros = phase.nanos.percentile(0.90) / 1000.0;
+            p99Micros = phase.nanos.percentile(0.99) / 1000.0;
+            maxMicros = phase.nanos.max() / 1000.0;
+            allocatedBytesPerCall = Math.round(phase.allocated.mean());
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        public double getP90Micros() {
+            return p90Micros;
+        }
+
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getAllocatedBytesPerCall() {
+            return allocatedBytesPerCall;
+        }
+    }
+
+    /* Summary of a histogram of counts or bytes (shown as a composite value over JMX) */
+    public static class Summary {
+
+        /* Variable declarations */
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        Summary(Histogram histogram) {
+            count = histogram.count();
+            mean = histogram.mean();
+            p50 = histogram.percentile(0.50);
+            p90 = histogram.percentile(0.90);
+            p99 = histogram.percentile(0.99);
+            max = histogram.max();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    /* What is registered with JMX */
+    private static class Bean implements MetricsMXBean {
+
+        public Map<String, PhaseSummary> getPhases() {
+            Map<String, PhaseSummary> phases = new LinkedHashMap<String, PhaseSummary>();
+            for (Phase phase : Phase.values()) {
+                phases.put(phase.label, new PhaseSummary(phase));
+            }
+            return phases;
+        }
+
+        public Summary getRowsPerQuery() {
+            return new Summary(ROWS_PER_QUERY);
+        }
+
+        public Summary getSeriesBytes() {
+            return new Summary(SERIES_BYTES);
+        }
+
+        public long getJdbcRoundTrips() {
+            return JDBC_ROUND_TRIPS.sum();
+        }
+
+        public long getCacheHits() {
+            return CACHE_HITS.sum();
+        }
+
+        public long getCacheMisses() {
+            return CACHE_MISSES.sum();
+        }
+
+        public long getTrades() {
+            return TRADES.sum();
+        }
+
+        public String getText() {
+            return text();
+        }
+
+        public String getJson() {
+            return json();
+        }
+
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
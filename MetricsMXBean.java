@@ -0,0 +1,31 @@
+/* Donald W. Strong
+ *
+ *  This interface outlines what Metrics exposes over JMX, under the name "stocktrading:type=Metrics" (see jconsole or
+ *  any other JMX client). Phases are keyed by name: "company name", "query", "ingest", "splits", "strategy" and
+ *  "request".
+ */
+import java.util.Map;
+
+public interface MetricsMXBean {
+
+    Map<String, Metrics.PhaseSummary> getPhases();
+
+    Metrics.Summary getRowsPerQuery();
+
+    Metrics.Summary getSeriesBytes();
+
+    long getJdbcRoundTrips();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getTrades();
+
+    /* The same report as the periodic dump, as plain text or one line of JSON */
+    String getText();
+
+    String getJson();
+
+    void reset();
+}
@@ -0,0 +1,325 @@
+/* Donald W. Strong
+ *
+ *  This class evaluates the investment strategy for every combination of strategy parameters in a grid, over one
+ *  PriceSeries, and reports the combinations with the highest net cash. The grid is read from the params file as
+ *  ranges in the form start:end:step (or a single value):
+ *      sweep.window=10:200:10      sweep.buy=0.90:0.99:0.005     sweep.sell=1.00:1.05:0.0025
+ *      sweep.lot=100               sweep.commission=8            sweep.top=10
+ *  The buy and sell thresholds of the grid get the same tolerance as StrategyParameters.DEFAULT, so "sweep.buy=0.97"
+ *  means what the default buy threshold means. Each result is exactly what runStrategy gives for its parameters:
+ *  the averages are summed the way SimpleMovingAverage sums them and the rules compare the same ratios.
+ *
+ *  The sweep is built so that each combination costs as little as possible:
+ *      - the series is copied once into arrays shared (read only) by every thread, along with the close/open and
+ *        open/previous close ratios, so each rule is one comparison
+ *      - the signals are worked out in bulk (see Signals): for each window, the average of every day once, then the
+ *        list of buying days for each buy threshold and of selling days for each sell threshold
+ *      - a (window, buy, sell) combination then only walks its two day lists, which hold a small share of the days
+ *      - whether a day is a buy or a sell does not depend on the lot size or commission, so each (window, buy, sell)
+ *        is only walked once and keeps totals from which the net cash of every lot size and commission follows
+ *        directly
+ *  The windows, and then the (window, buy, sell) combinations, are spread over all cores; each thread keeps its own
+ *  top N list and the lists are merged at the end.
+ */
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+public class ParameterSweep {
+
+    /* One evaluated combination of parameters */
+    public static class Result {
+        public final StrategyParameters params;
+        public final int transCount;
+        public final double cash;
+
+        Result(StrategyParameters params, int transCount, double cash) {
+            this.params = params;
+            this.transCount = transCount;
+            this.cash = cash;
+        }
+    }
+
+    /* Keeps the N results with the highest net cash seen so far (a min-heap, so the worst kept result is on top) */
+    static class Leaderboard {
+        final int size;
+        final PriorityQueue<Result> best;
+
+        Leaderboard(int size) {
+            this.size = size;
+            this.best = new PriorityQueue<Result>(size + 1, (a, b) -> Double.compare(a.cash, b.cash));
+        }
+
+        /* True if a result with this net cash would make the list, checked before a Result is allocated */
+        boolean qualifies(double cash) {
+            return best.size() < size || cash > best.peek().cash;
+        }
+
+        void offer(Result result) {
+            best.add(result);
+            if (best.size() > size) {
+                best.poll();
+            }
+        }
+
+        Leaderboard merge(Leaderboard other) {
+            for (Result result : other.best) {
+                if (qualifies(result.cash)) {
+                    offer(result);
+                }
+            }
+            return this;
+        }
+
+        /* Results from highest to lowest net cash */
+        List<Result> sorted() {
+            List<Result> results = new ArrayList<Result>(best);
+            results.sort((a, b) -> Double.compare(b.cash, a.cash));
+            return results;
+        }
+    }
+
+    /* The buying days of one window for each buy threshold, and its selling days for each sell threshold */
+    static class WindowSignals {
+        final int[][] buyDays;
+        final int[][] sellDays;
+
+        WindowSignals(int[][] buyDays, int[][] sellDays) {
+            this.buyDays = buyDays;
+            this.sellDays = sellDays;
+        }
+    }
+
+    /* The grid read from the params file (see the top of this file) */
+    static class Grid {
+        final int[] windows;
+        final double[] buys;
+        final double[] sells;
+        final int[] lots;
+        final double[] commissions;
+
+        Grid(Properties props) {
+            windows = toInts(range(props.getProperty("sweep.window", "10:200:10")));
+            buys = range(props.getProperty("sweep.buy", "0.90:0.99:0.005"));
+            sells = range(props.getProperty("sweep.sell", "1.00:1.05:0.0025"));
+            for (int i = 0; i < buys.length; i++) {
+                buys[i] += StrategyParameters.THRESHOLD_TOLERANCE;
+            }
+            for (int i = 0; i < sells.length; i++) {
+                sells[i] -= StrategyParameters.THRESHOLD_TOLERANCE;
+            }
+            lots = toInts(range(props.getProperty("sweep.lot", String.valueOf(StrategyParameters.DEFAULT.lotSize))));
+            commissions = range(props.getProperty("sweep.commission",
+                    String.valueOf(StrategyParameters.DEFAULT.commission)));
+        }
+
+        /* Number of combinations in the grid */
+        long size() {
+            return (long) windows.length * buys.length * sells.length * lots.length * commissions.length;
+        }
+
+        /* Sweeps the grid over 'series' and returns the 'top' best combinations, highest net cash first */
+        List<Result> sweep(PriceSeries series, int top) {
+            return new ParameterSweep(series).sweep(windows, buys, sells, lots, commissions, top);
+        }
+    }
+
+    /* Variable declarations */
+    private final int days;
+    private final double[] open;
+    private final double[] close;
+    private final double[] midPrice;
+    private final double[] closeOverOpen;
+    private final double[] openOverPrevClose;
+
+    /* Constructor that copies the series into the shared read only arrays used by every combination */
+    public ParameterSweep(PriceSeries series) {
+        days = series.size();
+        open = new double[days];
+        close = new double[days];
+        midPrice = new double[days];
+        closeOverOpen = new double[days];
+        openOverPrevClose = new double[days];
+        for (int i = 0; i < days; i++) {
+            open[i] = series.open(i);
+            close[i] = series.close(i);
+            midPrice[i] = (open[i] + close[i]) / 2;
+        }
+        Signals.ratios(open, close, days, closeOverOpen, openOverPrevClose);
+    }
+
+    /* Method that evaluates every combination of the given values and returns the 'top' best, highest net cash
+       first
+     */
+    public List<Result> sweep(int[] windows, double[] buys, double[] sells, int[] lots, double[] commissions,
+                              int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("Expected at least 1 result to keep, got " + top);
+        }
+        WindowSignals[] signals = new WindowSignals[windows.length];
+        IntStream.range(0, windows.length).parallel().forEach(w -> signals[w] = signals(windows[w], buys, sells));
+
+        int combinations = windows.length * buys.length * sells.length;
+        Leaderboard board = IntStream.range(0, combinations).parallel().collect(
+                () -> new Leaderboard(top),
+                (leaderboard, k) -> {
+                    int w = k / (buys.length * sells.length);
+                    int b = (k / sells.length) % buys.length;
+                    int s = k % sells.length;
+                    evaluate(leaderboard, windows[w], buys[b], sells[s], signals[w].buyDays[b],
+                            signals[w].sellDays[s], lots, commissions);
+                },
+                Leaderboard::merge);
+        return board.sorted();
+    }
+
+    /* Signal stage for one window: the average of every day, then the trading days of each threshold. Days run from
+       'window' (the first day with a full average) to the day before the last (the last day has no next open to
+       buy at).
+     */
+    private WindowSignals signals(int window, double[] buys, double[] sells) {
+        int[][] buyDays = new int[buys.length][];
+        int[][] sellDays = new int[sells.length][];
+        if (days <= window + 1) {
+            return new WindowSignals(buyDays, sellDays);
+        }
+        double[] average = new double[days];
+        Signals.movingAverage(close, window, days, average);
+        int[] found = new int[days + 1];
+        for (int b = 0; b < buys.length; b++) {
+            int count = Signals.buyDays(close, average, closeOverOpen, buys[b], window, days - 1, found);
+            buyDays[b] = Arrays.copyOf(found, count);
+        }
+        for (int s = 0; s < sells.length; s++) {
+            int count = Signals.sellDays(open, average, openOverPrevClose, sells[s], window, days - 1, found);
+            sellDays[s] = Arrays.copyOf(found, count);
+        }
+        return new WindowSignals(buyDays, sellDays);
+    }
+
+    /* Method that runs the strategy once for a (window, buy, sell) combination and offers the result of every lot
+       size and commission to the leaderboard. The bookkeeping follows StockTrading.runStrategy, counting lots
+       instead of shares and summing the prices paid and received instead of the cash, but only visits the buying
+       and selling days from the signal stage (a day on both lists buys, as in runStrategy).
+     */
+    private void evaluate(Leaderboard board, int window, double buyThreshold, double sellThreshold, int[] buyDays,
+                          int[] sellDays, int[] lots, double[] commissions) {
+        if (days <= window + 1) {
+            return;
+        }
+        int buyCount = 0;
+        int sellCount = 0;
+        int lotsHeld = 0;
+        double paid = 0;
+        double received = 0;
+
+        int next = 0;
+        for (int buyDay : buyDays) {
+            /* Sell on the selling days before this buying day, as long as there are lots to sell */
+            for (; next < sellDays.length && sellDays[next] < buyDay; next++) {
+                if (lotsHeld > 0) {
+                    sellCount++;
+                    lotsHeld--;
+                    received += midPrice[sellDays[next]];
+                }
+            }
+            if (next < sellDays.length && sellDays[next] == buyDay) {
+                next++;
+            }
+            buyCount++;
+            lotsHeld++;
+            paid += open[buyDay + 1];
+        }
+        for (; next < sellDays.length && lotsHeld > 0; next++) {
+            sellCount++;
+            lotsHeld--;
+            received += midPrice[sellDays[next]];
+        }
+
+        /* Any lots still held are sold at the last day's opening price (without commission) */
+        double finalSale = lotsHeld * open[days - 1];
+        int transCount = buyCount + sellCount + (lotsHeld > 0 ? 1 : 0);
+        for (int lot : lots) {
+            for (double commission : commissions) {
+                double cash = lot * (received - paid + finalSale) - commission * (buyCount + sellCount);
+                if (board.qualifies(cash)) {
+                    board.offer(new Result(new StrategyParameters(window, buyThreshold, sellThreshold, lot,
+                            commission), transCount, cash));
+                }
+            }
+        }
+    }
+
+    /* Method that reads the grid from the params file (see the top of this file), sweeps it over 'series' and prints
+       the best combinations
+     */
+    public static void run(PriceSeries series, Properties props) {
+        Grid grid = new Grid(props);
+        String topSetting = props.getProperty("sweep.top", "10").trim();
+        int top;
+        try {
+            top = Integer.parseInt(topSetting);
+        }
+        catch (NumberFormatException ex) {
+            top = 0;
+        }
+        if (top < 1) {
+            System.out.printf("Invalid sweep.top=%s, expected a whole number of at least 1.%n%n", topSetting);
+            return;
+        }
+
+        System.out.printf("Sweeping %d parameter combinations over %d trading days of %s (%s signals)...%n",
+                grid.size(), series.size(), series.ticker, Signals.implementation());
+        long startTime = System.nanoTime();
+        List<Result> best = grid.sweep(series, top);
+        long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+        DecimalFormat df = new DecimalFormat("#.##");
+        System.out.printf("%4s %7s %10s %11s %6s %11s %13s %14s%n", "Rank", "Window", "Buy below", "Sell above",
+                "Lot", "Commission", "Transactions", "Net cash");
+        int rank = 1;
+        for (Result result : best) {
+            System.out.printf("%4d %7d %10s %11s %6d %11s %13d %14s%n", rank++, result.params.window,
+                    result.params.buyThreshold, result.params.sellThreshold, result.params.lotSize,
+                    df.format(result.params.commission), result.transCount, df.format(result.cash));
+        }
+        System.out.printf("Swept %d combinations in %d ms%n%n", grid.size(), elapsed);
+    }
+
+    /* Parses "start:end:step" (both ends included) or a single value into the list of values it describes */
+    static double[] range(String spec) {
+        String[] parts = spec.trim().split(":");
+        if (parts.length == 1) {
+            return new double[] {Double.parseDouble(parts[0])};
+        }
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected a value or start:end:step, got " + spec);
+        }
+        double start = Double.parseDouble(parts[0]);
+        double end = Double.parseDouble(parts[1]);
+        double step = Double.parseDouble(parts[2]);
+        if (step <= 0 || end < start) {
+            throw new IllegalArgumentException("Expected start <= end and step > 0, got " + spec);
+        }
+
+        /* Count the values first so the steps do not accumulate rounding error */
+        int count = (int) Math.floor((end - start) / step + 1e-9) + 1;
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Math.round((start + i * step) * 1e9) / 1e9;
+        }
+        return values;
+    }
+
+    private static int[] toInts(double[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = (int) Math.round(values[i]);
+        }
+        return ints;
+    }
+}
@@ -0,0 +1,94 @@
+/* Donald W. Strong
+ *
+ *  This class answers price queries from the database over a ConnectionPool, so unlike JdbcPriceSource it can be
+ *  queried from several threads at once (see QueryService). Each query borrows a connection for as long as it runs,
+ *  which keeps the number of concurrent queries against the database at the size of the pool.
+ *
+ *  Date range queries read the full history and cut the range out of it, so they are adjusted the same way as the
+ *  full history without needing the split index.
+ */
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+public class PooledPriceSource implements PriceDataSource {
+
+    /* Variable declarations */
+    private final ConnectionPool pool;
+
+    public PooledPriceSource(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public int connections() {
+        return pool.size();
+    }
+
+    public List<String> companyNames(String ticker) throws SQLException {
+        PriceQueries queries = borrow();
+        try {
+            return queries.companyNames(ticker);
+        }
+        finally {
+            pool.release(queries);
+        }
+    }
+
+    public Map<String, String> companies() throws SQLException {
+        PriceQueries queries = borrow();
+        try {
+            return queries.companies();
+        }
+        finally {
+            pool.release(queries);
+        }
+    }
+
+    public PriceSeries priceVolume(String ticker) throws SQLException {
+        PriceQueries queries = borrow();
+        try {
+            return queries.priceVolume(ticker);
+        }
+        finally {
+            pool.release(queries);
+        }
+    }
+
+    public PriceSeries priceVolume(String ticker, String beginningDate, String endDate) throws SQLException {
+        try {
+            return priceVolume(ticker).between(TradeDate.parse(beginningDate), TradeDate.parse(endDate));
+        }
+        catch (IllegalArgumentException ex) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+    }
+
+    public int[] firstAndLastDay(String ticker, int beginDate, int endDate) throws SQLException {
+        PriceQueries queries = borrow();
+        try {
+            return queries.firstAndLastDay(ticker, beginDate, endDate);
+        }
+        finally {
+            pool.release(queries);
+        }
+    }
+
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /* Waits for a pooled connection. An interrupt is reported as an SQLException, like any other failed query. */
+    private PriceQueries borrow() throws SQLException {
+        try {
+            return pool.borrow();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+    }
+
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,326 @@
+/* Donald W. Strong
+ *
+ *  This class runs the investment strategy from StockTrading over many tickers as one portfolio: every ticker trades
+ *  out of one shared cash balance, instead of each getting unlimited cash of its own. The split adjusted series of
+ *  the tickers are merged into one stream of trading days in date order by a k-way merge (a priority queue holding
+ *  one cursor per ticker, ordered by the date of the cursor's current day), so no combined list of days is built:
+ *      - a cursor starts from the ticker's first and last day in the run (PriceDataSource.firstAndLastDay, which
+ *        reads no prices), only holds one block of its ticker's days ("portfolio.block=365" calendar days) and
+ *        reads the next block from the PriceDataSource when it runs out, so memory grows with the number of
+ *        tickers, not with the length of the history, and every day is read once
+ *      - each ticker keeps its own rolling average of its own closing prices, and the buy and sell rules are those
+ *        of runStrategy
+ *      - a buy signal is filled at the ticker's next opening price, when the merge reaches that day, as long as the
+ *        cash covers it and the position limits allow it:
+ *            "portfolio.cash=100000" = starting cash
+ *            "portfolio.positions=0" = most tickers held at once (0 means no limit)
+ *            "portfolio.shares=0" = most shares held of any one ticker (0 means no limit)
+ *      - whatever is still held of a ticker is sold at the opening price of its last trading day
+ *  Every transaction goes to one transaction log, in date order (see TransactionLog), and the cash, market value,
+ *  equity and number of positions after each day's close are written as one CSV line per date to the equity curve
+ *  ("portfolio.equity=equity.csv"). "portfolio.start" and "portfolio.end" (YYYY.MM.DD) limit the run to a range of
+ *  dates.
+ */
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+public class PortfolioBacktest {
+
+    /* Defaults for the portfolio settings in the params file */
+    static final double DEFAULT_CASH = 100000;
+    static final int DEFAULT_BLOCK_DAYS = 365;
+    static final String DEFAULT_EQUITY_FILE = "equity.csv";
+
+    /* Totals of a portfolio run */
+    public static class Result {
+        public final int tickers;
+        public final int tradingDays;
+        public final int firstDate;
+        public final int lastDate;
+        public final int transCount;
+        public final int skippedForCash;
+        public final int skippedForLimits;
+        public final double startingCash;
+        public final double cash;
+        public final double maxDrawdown;
+
+        Result(int tickers, int tradingDays, int firstDate, int lastDate, int transCount, int skippedForCash,
+               int skippedForLimits, double startingCash, double cash, double maxDrawdown) {
+            this.tickers = tickers;
+            this.tradingDays = tradingDays;
+            this.firstDate = firstDate;
+            this.lastDate = lastDate;
+            this.transCount = transCount;
+            this.skippedForCash = skippedForCash;
+            this.skippedForLimits = skippedForLimits;
+            this.startingCash = startingCash;
+            this.cash = cash;
+            this.maxDrawdown = maxDrawdown;
+        }
+    }
+
+    /* One ticker's place in the merge: the block of days currently in memory, the day the merge has reached, and the
+       ticker's position and strategy state
+     */
+    private class Cursor {
+        final String ticker;
+        final int order;
+        final int lastDate;
+        final Indicator average;
+        PriceSeries block;
+        int day;
+        int nextBlock;
+        int daysSeen;
+        double prevClose;
+        int shares;
+        double value;
+        boolean buySignal;
+
+        /* Constructor that reads the block starting on the ticker's first day */
+        Cursor(String ticker, int order, int firstDate, int lastDate) throws SQLException {
+            this.ticker = ticker;
+            this.order = order;
+            this.lastDate = lastDate;
+            this.average = new SimpleMovingAverage(params.window);
+            block = new PriceSeries.Builder(ticker, 0).build();
+            day = -1;
+            nextBlock = firstDate;
+            advance();
+        }
+
+        int date() {
+            return block.date(day);
+        }
+
+        boolean isLastDay() {
+            return date() == lastDate;
+        }
+
+        /* Moves to the next day, reading the next block that has any days in it once this one is used up */
+        void advance() throws SQLException {
+            day++;
+            while (day == block.size()) {
+                int from = nextBlock;
+                if (from > lastDate) {
+                    throw new IllegalStateException("Prices of " + ticker + " end before " +
+                            TradeDate.format(lastDate));
+                }
+                nextBlock = (int) Math.min((long) from + blockDays, lastDate + 1L);
+                block = source.priceVolume(ticker, TradeDate.format(from), TradeDate.format(nextBlock - 1)).copy();
+                day = 0;
+            }
+        }
+    }
+
+    /* Variable declarations */
+    private final PriceDataSource source;
+    private final StrategyParameters params;
+    private final double startingCash;
+    private final int maxPositions;
+    private final int maxShares;
+    private final int blockDays;
+
+    public PortfolioBacktest(PriceDataSource source, StrategyParameters params, double startingCash, int maxPositions,
+                             int maxShares, int blockDays) {
+        if (blockDays < 1) {
+            throw new IllegalArgumentException("Block must be at least 1 day: " + blockDays);
+        }
+        this.source = source;
+        this.params = params;
+        this.startingCash = startingCash;
+        this.maxPositions = maxPositions;
+        this.maxShares = maxShares;
+        this.blockDays = blockDays;
+    }
+
+    /* Method that reads the portfolio settings from the params file (see the top of this file), runs the portfolio
+       over 'tickers' and prints its totals. 'log' receives every transaction, or is null for no transaction log.
+     */
+    public static Result run(PriceDataSource source, List<String> tickers, Properties props, StrategyParameters params,
+                             TransactionLog log) throws SQLException, IOException {
+        PortfolioBacktest portfolio = new PortfolioBacktest(source, params,
+                Double.parseDouble(props.getProperty("portfolio.cash", String.valueOf(DEFAULT_CASH)).trim()),
+                Integer.parseInt(props.getProperty("portfolio.positions", "0").trim()),
+                Integer.parseInt(props.getProperty("portfolio.shares", "0").trim()),
+                Integer.parseInt(props.getProperty("portfolio.block", String.valueOf(DEFAULT_BLOCK_DAYS)).trim()));
+        String start = props.getProperty("portfolio.start");
+        String end = props.getProperty("portfolio.end");
+        Path equityFile = Paths.get(props.getProperty("portfolio.equity", DEFAULT_EQUITY_FILE).trim());
+
+        System.out.printf("Running portfolio of %d tickers with %s starting cash...%n", tickers.size(),
+                new DecimalFormat("#.##").format(portfolio.startingCash));
+        long startTime = System.nanoTime();
+        Result result;
+        try (Writer equity = Files.newBufferedWriter(equityFile, StandardCharsets.UTF_8)) {
+            result = portfolio.run(tickers, (start == null) ? Integer.MIN_VALUE : TradeDate.parse(start),
+                    (end == null) ? Integer.MAX_VALUE : TradeDate.parse(end), log, equity);
+        }
+        long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+        DecimalFormat df = new DecimalFormat("#.##");
+        if (result.tradingDays == 0) {
+            System.out.println("No prices found for the portfolio.\n");
+            return result;
+        }
+        System.out.printf("%d tickers over %d trading days (%s to %s)%n", result.tickers, result.tradingDays,
+                TradeDate.format(result.firstDate), TradeDate.format(result.lastDate));
+        System.out.println("Transactions executed: " + result.transCount);
+        System.out.printf("Buys skipped: %d for lack of cash, %d for position limits%n", result.skippedForCash,
+                result.skippedForLimits);
+        System.out.printf("Final cash: %s (%s%%)%n", df.format(result.cash),
+                df.format(100 * (result.cash - result.startingCash) / result.startingCash));
+        System.out.printf("Maximum drawdown: %s%%%n", df.format(100 * result.maxDrawdown));
+        System.out.printf("Equity curve written to %s (%d ms)%n%n", equityFile, elapsed);
+        return result;
+    }
+
+    /* Runs the portfolio over the days of 'tickers' from 'startDate' through 'endDate' (epoch days, inclusive),
+       logging every transaction to 'log' (unless it is null) and writing the equity curve to 'equity'
+     */
+    public Result run(List<String> tickers, int startDate, int endDate, TransactionLog log, Writer equity)
+            throws SQLException, IOException {
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        PriorityQueue<Cursor> merge = new PriorityQueue<Cursor>(Math.max(tickers.size(), 1), (a, b) -> {
+            int byDate = Integer.compare(a.date(), b.date());
+            return (byDate != 0) ? byDate : Integer.compare(a.order, b.order);
+        });
+
+        /* Only each ticker's first and last day in the range are looked up; its days are read one block at a time */
+        for (String ticker : tickers) {
+            int[] days = source.firstAndLastDay(ticker, startDate, endDate);
+            if (days != null) {
+                merge.add(new Cursor(ticker, merge.size(), days[0], days[1]));
+            }
+        }
+        int tickerCount = merge.size();
+
+        boolean transLog = (log != null);
+        StringBuilder line = new StringBuilder(96);
+        equity.write("date,cash,market_value,equity,positions\n");
+        double cash = startingCash;
+        double marketValue = 0;
+        double peak = startingCash;
+        double maxDrawdown = 0;
+        int positions = 0;
+        int transCount = 0;
+        int skippedForCash = 0;
+        int skippedForLimits = 0;
+        int tradingDays = 0;
+        int firstDate = merge.isEmpty() ? 0 : merge.peek().date();
+        int date = firstDate;
+        int lot = params.lotSize;
+
+        while (!merge.isEmpty()) {
+            Cursor c = merge.poll();
+            date = c.date();
+            double open = c.block.open(c.day);
+            double close = c.block.close(c.day);
+
+            /* Fill yesterday's buy signal at today's open, if the cash and position limits allow it */
+            if (c.buySignal) {
+                c.buySignal = false;
+                double cost = lot * open + params.commission;
+                if ((c.shares == 0 && maxPositions > 0 && positions >= maxPositions) ||
+                        (maxShares > 0 && c.shares + lot > maxShares)) {
+                    skippedForLimits++;
+                }
+                else if (cost > cash) {
+                    skippedForCash++;
+                }
+                else {
+                    if (c.shares == 0) {
+                        positions++;
+                    }
+                    transCount++;
+                    c.shares += lot;
+                    cash -= (lot * open);
+                    cash -= params.commission;
+                    if (transLog) {
+                        log.buy(c.ticker, date, lot, open, c.shares, cash);
+                    }
+                }
+            }
+
+            /* Sell whatever is left on the ticker's last day */
+            if (c.isLastDay()) {
+                if (c.shares > 0) {
+                    cash += (open * c.shares);
+                    transCount++;
+                    positions--;
+                    if (transLog) {
+                        log.finalSale(c.ticker, date, c.shares, open, cash, c.average.value());
+                    }
+                    c.shares = 0;
+                }
+            }
+            /* The rules of runStrategy, once the average has been primed with 'window' closing prices */
+            else if (c.daysSeen >= params.window) {
+                double avgClosePrice = c.average.value();
+                if (close < avgClosePrice && close / open < params.buyThreshold) {
+                    c.buySignal = true;
+                }
+                else if (c.shares >= lot && open > avgClosePrice && open / c.prevClose > params.sellThreshold) {
+                    double todaysAvgPrice = (open + close) / 2;
+                    transCount++;
+                    c.shares -= lot;
+                    cash += (lot * todaysAvgPrice);
+                    cash -= params.commission;
+                    if (c.shares == 0) {
+                        positions--;
+                    }
+                    if (transLog) {
+                        log.sell(c.ticker, date, lot, todaysAvgPrice, c.shares, cash);
+                    }
+                }
+            }
+
+            /* Keep the market value of the holdings at today's close (exactly 0 once nothing is held, so no rounding
+               error is carried along)
+             */
+            marketValue = (positions == 0) ? 0 : marketValue + (c.shares * close) - c.value;
+            c.value = c.shares * close;
+
+            if (!c.isLastDay()) {
+                c.average.update(close);
+                c.daysSeen++;
+                c.prevClose = close;
+                c.advance();
+                merge.add(c);
+            }
+
+            /* Once every ticker has had this date, write the day's line of the equity curve */
+            if (merge.isEmpty() || merge.peek().date() != date) {
+                tradingDays++;
+                double total = cash + marketValue;
+                peak = Math.max(peak, total);
+                if (peak > 0) {
+                    maxDrawdown = Math.max(maxDrawdown, (peak - total) / peak);
+                }
+                line.setLength(0);
+                line.append(TradeDate.format(date)).append(',');
+                TransactionLog.appendDecimal(line, cash);
+                line.append(',');
+                TransactionLog.appendDecimal(line, marketValue);
+                line.append(',');
+                TransactionLog.appendDecimal(line, total);
+                line.append(',').append(positions).append('\n');
+                equity.append(line);
+            }
+        }
+
+        Metrics.record(Metrics.Phase.STRATEGY, started, allocated);
+        Metrics.TRADES.add(transCount);
+        return new Result(tickerCount, tradingDays, firstDate, date, transCount, skippedForCash, skippedForLimits,
+                startingCash, cash, maxDrawdown);
+    }
+}
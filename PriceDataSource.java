@@ -0,0 +1,41 @@
+/* Donald W. Strong
+ *
+ *  This interface outlines where StockTrading gets its company names and prices from. getCompanyName and
+ *  getPriceVolume only go through this interface, so the program runs the same way against:
+ *      JdbcPriceSource = the company and pricevolume tables of the database
+ *      PriceSnapshot = a local binary snapshot of the database (see --refresh and --offline)
+ *      FlatFilePriceSource = a tab or comma separated export of the pricevolume table
+ *  Every price series returned is split adjusted and in chronological order.
+ */
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+public interface PriceDataSource extends AutoCloseable {
+
+    /* Returns the name(s) of the company with the given ticker, or an empty list if the ticker is unknown */
+    List<String> companyNames(String ticker) throws SQLException;
+
+    /* Returns every company as a map from ticker to company name, in ticker order */
+    Map<String, String> companies() throws SQLException;
+
+    /* Returns the full price history for a ticker, or an empty series if it has no prices */
+    PriceSeries priceVolume(String ticker) throws SQLException;
+
+    /* Returns the prices for a ticker from 'beginningDate' through 'endDate' (YYYY.MM.DD), adjusted the same way as
+       the full history. The series carries the splits that fall between two days of the range.
+     */
+    PriceSeries priceVolume(String ticker, String beginningDate, String endDate) throws SQLException;
+
+    /* Returns the first and last day a ticker has prices for from 'beginDate' through 'endDate' (epoch days,
+       inclusive) as {first, last}, or null if it has none in that range. No prices are read, so a history can be
+       walked in date ranges without reading all of it first (see PortfolioBacktest).
+     */
+    int[] firstAndLastDay(String ticker, int beginDate, int endDate) throws SQLException;
+
+    /* True if several threads may query this source at once (as BatchBacktest does) */
+    boolean isThreadSafe();
+
+    void close() throws SQLException, IOException;
+}
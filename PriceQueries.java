@@ -0,0 +1,249 @@
+/* Donald W. Strong
+ *
+ *  This class holds the queries StockTrading runs against the company and pricevolume tables for one database
+ *  connection. Each query is prepared the first time it is used and then reused, with the ticker and dates bound as
+ *  parameters rather than pasted into the SQL.
+ *
+ *  Every pricevolume query goes through ingest(), the single pipeline that turns rows into a PriceSeries. Rows are
+ *  streamed from the database (most recent day first). Each price is read once with getDouble and fed straight into
+ *  a SplitAdjuster (which supplies the divisor for the day) and the PriceSeries.Builder. TransDate is read as bytes
+ *  (getBytes) and its digits are parsed in place into an epoch day, so no String or LocalDate is made for a row.
+ *
+ *  A PriceQueries object is not thread safe; threads that query concurrently each use their own (see ConnectionPool).
+ */
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PriceQueries implements AutoCloseable {
+
+    private static final String PRICE_COLUMNS = "select TransDate, OpenPrice, HighPrice, LowPrice, ClosePrice" +
+            " from pricevolume where Ticker = ?";
+
+    /* Passed to splitScan() to scan every day of a ticker */
+    static final int ALL_DATES = Integer.MIN_VALUE;
+
+    /* Number of rows fetched per round trip by drivers that do not support MySQL's row-by-row streaming */
+    private static final int FETCH_SIZE = 1000;
+
+    /* Variable declarations */
+    private final Connection connection;
+    private PreparedStatement companyNameQuery;
+    private PreparedStatement companiesQuery;
+    private PreparedStatement historyQuery;
+    private PreparedStatement rangeQuery;
+    private PreparedStatement afterQuery;
+    private PreparedStatement splitScanQuery;
+    private PreparedStatement dayRangeQuery;
+
+    public PriceQueries(Connection connection) {
+        this.connection = connection;
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    /* Returns the name(s) of the company with the given ticker, or an empty list if it is not in the DB */
+    public List<String> companyNames(String ticker) throws SQLException {
+        if (companyNameQuery == null) {
+            companyNameQuery = connection.prepareStatement("select distinct Name from company where Ticker = ?");
+        }
+        companyNameQuery.setString(1, ticker);
+        List<String> names = new ArrayList<String>();
+        try (ResultSet results = companyNameQuery.executeQuery()) {
+            Metrics.JDBC_ROUND_TRIPS.increment();
+            while (results.next()) {
+                names.add(results.getString(1));
+            }
+        }
+        return names;
+    }
+
+    /* Returns every company in the DB as a map from ticker to company name, in ticker order */
+    public Map<String, String> companies() throws SQLException {
+        if (companiesQuery == null) {
+            companiesQuery = connection.prepareStatement("select Ticker, Name from company order by Ticker");
+        }
+        Map<String, String> companies = new LinkedHashMap<String, String>();
+        try (ResultSet results = companiesQuery.executeQuery()) {
+            Metrics.JDBC_ROUND_TRIPS.increment();
+            while (results.next()) {
+                String ticker = results.getString(1).trim();
+                if (!companies.containsKey(ticker)) {
+                    companies.put(ticker, results.getString(2).trim());
+                }
+            }
+        }
+        return companies;
+    }
+
+    /* Returns the full split adjusted price history for a ticker, or an empty series if it has no prices */
+    public PriceSeries priceVolume(String ticker) throws SQLException {
+        if (historyQuery == null) {
+            historyQuery = prepareStreaming(PRICE_COLUMNS + " order by TransDate DESC");
+        }
+        historyQuery.setString(1, ticker);
+        return ingest(historyQuery, ticker);
+    }
+
+    /* Returns the prices for a ticker from 'beginningDate' through 'endDate' (YYYY.MM.DD). Each day is adjusted
+       with the divisor the ticker's indexed splits give for it, so only the rows inside the range are read. The
+       series carries the splits that fall between two days of the range.
+     */
+    public PriceSeries priceVolume(String ticker, String beginningDate, String endDate,
+                                   SplitIndex.TickerSplits splits) throws SQLException {
+        if (rangeQuery == null) {
+            rangeQuery = prepareStreaming(PRICE_COLUMNS + " and TransDate >= ? and TransDate <= ?" +
+                    " order by TransDate DESC");
+        }
+        rangeQuery.setString(1, ticker);
+        rangeQuery.setString(2, beginningDate);
+        rangeQuery.setString(3, endDate);
+        PriceSeries.Builder builder = new PriceSeries.Builder(ticker);
+        ingest(rangeQuery, builder, splits);
+        PriceSeries series = builder.build();
+        if (series.size() < 2) {
+            return series;
+        }
+        return builder.build(splits.between(series.date(0), series.date(series.size() - 1)));
+    }
+
+    /* Reads the days after 'afterDate' (an epoch day) into an existing builder and split detector, so the caller can
+       carry on with older days it already has (see PriceSnapshot.refresh). Returns the number of days read.
+     */
+    public int priceVolumeAfter(String ticker, int afterDate, PriceSeries.Builder series, SplitDetector splits)
+            throws SQLException {
+        if (afterQuery == null) {
+            afterQuery = prepareStreaming(PRICE_COLUMNS + " and TransDate > ? order by TransDate DESC");
+        }
+        afterQuery.setString(1, ticker);
+        afterQuery.setString(2, TradeDate.format(afterDate));
+        return ingest(afterQuery, series, splits);
+    }
+
+    /* Returns the first and last day of a ticker from 'beginDate' through 'endDate' (epoch days, inclusive) as
+       {first, last}, or null if it has no prices in that range. Integer.MIN_VALUE and Integer.MAX_VALUE leave the
+       range open at that end.
+     */
+    public int[] firstAndLastDay(String ticker, int beginDate, int endDate) throws SQLException {
+        if (dayRangeQuery == null) {
+            dayRangeQuery = connection.prepareStatement("select min(TransDate), max(TransDate) from pricevolume" +
+                    " where Ticker = ? and TransDate >= ? and TransDate <= ?");
+        }
+        dayRangeQuery.setString(1, ticker);
+        dayRangeQuery.setString(2, (beginDate == Integer.MIN_VALUE) ? "" : TradeDate.format(beginDate));
+        /* Every YYYY.MM.DD date compares below "9999.99.99" */
+        dayRangeQuery.setString(3, (endDate == Integer.MAX_VALUE) ? "9999.99.99" : TradeDate.format(endDate));
+        try (ResultSet results = dayRangeQuery.executeQuery()) {
+            Metrics.JDBC_ROUND_TRIPS.increment();
+            if (!results.next()) {
+                return null;
+            }
+            String first = results.getString(1);
+            String last = results.getString(2);
+            return (first == null || last == null) ? null : new int[] {TradeDate.parse(first), TradeDate.parse(last)};
+        }
+    }
+
+    /* Runs only the split detector over the days after 'afterDate' (an epoch day, or ALL_DATES), most recent first.
+       Reads just the dates and the opening and closing prices. Returns the number of days read.
+     */
+    public int splitScan(String ticker, int afterDate, SplitDetector splits) throws SQLException {
+        if (splitScanQuery == null) {
+            splitScanQuery = prepareStreaming("select TransDate, OpenPrice, ClosePrice from pricevolume" +
+                    " where Ticker = ? and TransDate > ? order by TransDate DESC");
+        }
+        splitScanQuery.setString(1, ticker);
+        splitScanQuery.setString(2, (afterDate == ALL_DATES) ? "" : TradeDate.format(afterDate));
+        int rows = 0;
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        try (ResultSet results = splitScanQuery.executeQuery()) {
+            Metrics.JDBC_ROUND_TRIPS.increment();
+            Metrics.record(Metrics.Phase.QUERY, started, allocated);
+            started = System.nanoTime();
+            allocated = Metrics.allocatedBytes();
+            while (results.next()) {
+                splits.next(TradeDate.parse(results.getBytes(1)), results.getDouble(2), results.getDouble(3));
+                rows++;
+            }
+        }
+        Metrics.record(Metrics.Phase.SPLITS, started, allocated);
+        return rows;
+    }
+
+    private PriceSeries ingest(PreparedStatement query, String ticker) throws SQLException {
+        PriceSeries.Builder series = new PriceSeries.Builder(ticker);
+        SplitDetector splits = new SplitDetector();
+        ingest(query, series, splits);
+        return series.build(splits.splits());
+    }
+
+    /* The ingestion pipeline. Runs a pricevolume query (most recent day first) and prepends each day to the series,
+       then passes the days read to the split adjuster, most recent first, and divides them by its divisors. Returns
+       the number of rows read. The query, the row loop and the split adjustment are timed as separate phases (see
+       Metrics).
+     */
+    private int ingest(PreparedStatement query, PriceSeries.Builder series, SplitAdjuster splits)
+            throws SQLException {
+        int rows = 0;
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        try (ResultSet results = query.executeQuery()) {
+            Metrics.JDBC_ROUND_TRIPS.increment();
+            Metrics.record(Metrics.Phase.QUERY, started, allocated);
+            started = System.nanoTime();
+            allocated = Metrics.allocatedBytes();
+            while (results.next()) {
+                int date = TradeDate.parse(results.getBytes(1));
+                double openPrice = results.getDouble(2);
+                double highPrice = results.getDouble(3);
+                double lowPrice = results.getDouble(4);
+                double closePrice = results.getDouble(5);
+
+                series.prepend(date, openPrice, highPrice, lowPrice, closePrice);
+                rows++;
+            }
+        }
+        Metrics.record(Metrics.Phase.INGEST, started, allocated);
+        Metrics.ingested(rows);
+        started = System.nanoTime();
+        allocated = Metrics.allocatedBytes();
+        series.adjust(rows, splits);
+        Metrics.record(Metrics.Phase.SPLITS, started, allocated);
+        return rows;
+    }
+
+    /* Prepares a forward-only, read-only query whose rows are streamed instead of buffered in full. MySQL streams
+       row by row when the fetch size is Integer.MIN_VALUE; other drivers reject that value and get a regular fetch
+       size instead.
+     */
+    private PreparedStatement prepareStreaming(String sql) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        try {
+            query.setFetchSize(Integer.MIN_VALUE);
+        }
+        catch (SQLException ex) {
+            query.setFetchSize(FETCH_SIZE);
+        }
+        return query;
+    }
+
+    /* Closes the prepared statements and the connection */
+    public void close() throws SQLException {
+        for (PreparedStatement query : new PreparedStatement[] {companyNameQuery, companiesQuery, historyQuery,
+                rangeQuery, afterQuery, splitScanQuery, dayRangeQuery}) {
+            if (query != null) {
+                query.close();
+            }
+        }
+        connection.close();
+    }
+}
@@ -0,0 +1,216 @@
+/* Donald W. Strong
+ *
+ *  This class defines the price history of a single company in columnar form. Rather than one Entry object per trading
+ *  day, a PriceSeries keeps parallel primitive arrays:
+ *      dates = the trading day as an epoch day (see TradeDate)
+ *      open/high/low/close = the split adjusted prices for that day
+ *  along with the stock splits that were detected (and adjusted for) while the series was read. The ticker is stored
+ *  once for the whole series. Days are always held in chronological order (oldest first) and are read by index, so
+ *  walking a series allocates nothing.
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PriceSeries {
+
+    /* Variable declarations */
+    public final String ticker;
+    private final int[] dates;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final int offset;
+    private final int size;
+    private final List<SplitEvent> splits;
+
+    /* Constructor for a series over arrays[offset, offset + size). The arrays are shared, not copied */
+    PriceSeries(String ticker, int[] dates, double[] open, double[] high, double[] low, double[] close, int offset,
+                int size, List<SplitEvent> splits) {
+        this.ticker = ticker;
+        this.dates = dates;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.offset = offset;
+        this.size = size;
+        this.splits = splits;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int date(int i) {
+        return dates[offset + i];
+    }
+
+    public double open(int i) {
+        return open[offset + i];
+    }
+
+    public double high(int i) {
+        return high[offset + i];
+    }
+
+    public double low(int i) {
+        return low[offset + i];
+    }
+
+    public double close(int i) {
+        return close[offset + i];
+    }
+
+    /* Stock splits detected in this series, most recent first */
+    public List<SplitEvent> splits() {
+        return splits;
+    }
+
+    /* Returns the days from 'beginDate' through 'endDate' (epoch days, inclusive) as a view over the same arrays. The
+       days are found by binary search, so no prices are copied. Only the splits between two days of the range are
+       kept with the view.
+     */
+    public PriceSeries between(int beginDate, int endDate) {
+        int from = firstOnOrAfter(beginDate);
+        int to = (endDate == Integer.MAX_VALUE) ? size : Math.max(from, firstOnOrAfter(endDate + 1));
+        List<SplitEvent> rangeSplits = Collections.emptyList();
+        if (to - from > 1) {
+            for (SplitEvent split : splits) {
+                if (split.date >= date(from) && split.date < date(to - 1)) {
+                    if (rangeSplits.isEmpty()) {
+                        rangeSplits = new ArrayList<SplitEvent>();
+                    }
+                    rangeSplits.add(split);
+                }
+            }
+        }
+        return new PriceSeries(ticker, dates, open, high, low, close, offset + from, to - from, rangeSplits);
+    }
+
+    /* Returns the days of this series in arrays of their own, so that a short view (see between) no longer keeps the
+       arrays of the whole history in memory
+     */
+    public PriceSeries copy() {
+        return new PriceSeries(ticker, Arrays.copyOfRange(dates, offset, offset + size),
+                Arrays.copyOfRange(open, offset, offset + size), Arrays.copyOfRange(high, offset, offset + size),
+                Arrays.copyOfRange(low, offset, offset + size), Arrays.copyOfRange(close, offset, offset + size), 0,
+                size, splits);
+    }
+
+    /* Returns the index of the first day on or after 'date', or size() if there is none */
+    public int firstOnOrAfter(int date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[offset + mid] < date) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /* Builder used while reading query results. The pricevolume queries return the most recent day first, so the
+       builder fills its arrays from the back. Once all rows are in, the filled region is already in chronological
+       order and build() hands it to the PriceSeries without copying or reversing it.
+     */
+    public static class Builder {
+
+        private final String ticker;
+        private int[] dates;
+        private double[] open;
+        private double[] high;
+        private double[] low;
+        private double[] close;
+        private int start;
+
+        public Builder(String ticker) {
+            this(ticker, 256);
+        }
+
+        public Builder(String ticker, int expectedSize) {
+            this.ticker = ticker;
+            int capacity = Math.max(expectedSize, 16);
+            dates = new int[capacity];
+            open = new double[capacity];
+            high = new double[capacity];
+            low = new double[capacity];
+            close = new double[capacity];
+            start = capacity;
+        }
+
+        /* Adds a trading day that is older than every day added so far */
+        public void prepend(int date, double openPrice, double highPrice, double lowPrice, double closePrice) {
+            if (start == 0) {
+                grow();
+            }
+            start--;
+            dates[start] = date;
+            open[start] = openPrice;
+            high[start] = highPrice;
+            low[start] = lowPrice;
+            close[start] = closePrice;
+        }
+
+        public int size() {
+            return dates.length - start;
+        }
+
+        /* Divides the prices of the 'days' oldest days added so far by the divisor the split adjuster gives for each,
+           passing the days to it most recent first
+         */
+        public void adjust(int days, SplitAdjuster splits) {
+            for (int i = start + days - 1; i >= start; i--) {
+                double divisor = splits.next(dates[i], open[i], close[i]);
+                open[i] /= divisor;
+                high[i] /= divisor;
+                low[i] /= divisor;
+                close[i] /= divisor;
+            }
+        }
+
+        /* Opening price of the oldest day added so far */
+        public double firstOpen() {
+            return open[start];
+        }
+
+        public PriceSeries build() {
+            return build(Collections.<SplitEvent>emptyList());
+        }
+
+        public PriceSeries build(List<SplitEvent> splits) {
+            return new PriceSeries(ticker, dates, open, high, low, close, start, size(), splits);
+        }
+
+        /* Doubles the capacity, keeping the filled region at the back of the new arrays */
+        private void grow() {
+            int filled = size();
+            int capacity = dates.length * 2;
+            int newStart = capacity - filled;
+            int[] newDates = new int[capacity];
+            System.arraycopy(dates, start, newDates, newStart, filled);
+            dates = newDates;
+            open = grow(open, newStart, filled);
+            high = grow(high, newStart, filled);
+            low = grow(low, newStart, filled);
+            close = grow(close, newStart, filled);
+            start = newStart;
+        }
+
+        private double[] grow(double[] values, int newStart, int filled) {
+            double[] grown = new double[dates.length];
+            System.arraycopy(values, start, grown, newStart, filled);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/* Donald W. Strong
+ *
+ *  This class defines a local binary snapshot of the split adjusted price history of every company, so that prices
+ *  can be looked up without a round trip to the database (or without the database at all). The file is memory mapped
+ *  and laid out as:
+ *      header = magic number, format version and the number of tickers
+ *      index = for every ticker: ticker, company name, offset of its data section, number of days and splits
+ *      data sections = for every ticker (8 byte aligned): int[] dates, double[] open, high, low and close prices
+ *                      (oldest day first), followed by its split records (date, ratio, close, next open)
+ *  Only the small index is parsed when the snapshot is opened. A lookup finds the ticker's section in the index and
+ *  bulk copies the arrays straight out of the mapped file; a date range is found by binary search over the mapped
+ *  dates, so only its days are copied.
+ *
+ *  refresh() brings a snapshot up to date by fetching, for every ticker, only the rows newer than the last day in the
+ *  snapshot. If a split is detected in (or right before) the new rows, the stored days are rescaled by the new
+ *  divisor, which gives the same prices a full re-read of the history would. The refreshed snapshot is written to a
+ *  temporary file and moved over the old one, so readers never see a partial file.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class PriceSnapshot implements PriceDataSource {
+
+    /* Default location of the snapshot, can be changed with e.g. "snapshot=/data/prices.snapshot" in the params file */
+    static final String DEFAULT_FILE = "prices.snapshot";
+
+    private static final int MAGIC = 0x53545053; // "STPS"
+    private static final int VERSION = 1;
+    private static final int SPLIT_RECORD_SIZE = 32;
+
+    /* Location of one ticker's data inside the file */
+    static class Section {
+        final String ticker;
+        final String name;
+        final long offset;
+        final int days;
+        final int splits;
+
+        Section(String ticker, String name, long offset, int days, int splits) {
+            this.ticker = ticker;
+            this.name = name;
+            this.offset = offset;
+            this.days = days;
+            this.splits = splits;
+        }
+    }
+
+    /* Variable declarations */
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Section> index;
+
+    private PriceSnapshot(FileChannel channel, MappedByteBuffer buffer, Map<String, Section> index) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.index = index;
+    }
+
+    /* Maps an existing snapshot file and reads its index */
+    public static PriceSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " is larger than 2GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a price snapshot");
+            }
+            int count = buffer.getInt(8);
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(12);
+            Map<String, Section> index = new LinkedHashMap<String, Section>();
+            for (int i = 0; i < count; i++) {
+                String ticker = readString(reader);
+                String name = readString(reader);
+                long offset = reader.getLong();
+                int days = reader.getInt();
+                int splits = reader.getInt();
+                index.put(key(ticker), new Section(ticker, name, offset, days, splits));
+            }
+            return new PriceSnapshot(channel, buffer, index);
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /* Returns the tickers held in the snapshot, in the order they were written */
+    public Collection<String> tickers() {
+        List<String> tickers = new ArrayList<String>();
+        for (Section section : index.values()) {
+            tickers.add(section.ticker);
+        }
+        return tickers;
+    }
+
+    /* Returns the company name for a ticker (case insensitive), or null if the ticker is not in the snapshot */
+    public String companyName(String ticker) {
+        Section section = index.get(key(ticker));
+        return (section == null) ? null : section.name;
+    }
+
+    /* Returns the split adjusted series for a ticker (case insensitive), or an empty series if it is not in the
+       snapshot. The series is labelled with the ticker exactly as it was passed in.
+     */
+    public PriceSeries load(String ticker) {
+        Section section = index.get(key(ticker));
+        if (section == null) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+        return read(ticker, section, 0, section.days);
+    }
+
+    /* Returns the days from 'beginDate' through 'endDate' (epoch days, inclusive) of a ticker's series. The first and
+       last day are found by binary search over the mapped dates, so only the days of the range are copied.
+     */
+    public PriceSeries load(String ticker, int beginDate, int endDate) {
+        Section section = index.get(key(ticker));
+        if (section == null) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+        int from = firstOnOrAfter(section, beginDate);
+        int to = (endDate == Integer.MAX_VALUE) ? section.days
+                : Math.max(from, firstOnOrAfter(section, endDate + 1));
+        return read(ticker, section, from, to);
+    }
+
+    /* Method that copies days 'from' (inclusive) through 'to' (exclusive) of a section out of the mapped file. As in
+       PriceSeries.between, only the splits between two days of the range are kept.
+     */
+    private PriceSeries read(String ticker, Section section, int from, int to) {
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        int days = to - from;
+        int[] dates = new int[days];
+        double[] open = new double[days];
+        double[] high = new double[days];
+        double[] low = new double[days];
+        double[] close = new double[days];
+
+        ByteBuffer reader = buffer.duplicate();
+        int position = (int) section.offset;
+        reader.position(position + 4 * from);
+        reader.asIntBuffer().get(dates);
+        position += align(4L * section.days);
+        position = readDoubles(reader, position, section.days, from, open);
+        position = readDoubles(reader, position, section.days, from, high);
+        position = readDoubles(reader, position, section.days, from, low);
+        position = readDoubles(reader, position, section.days, from, close);
+
+        List<SplitEvent> splits = new ArrayList<SplitEvent>();
+        for (int i = 0; i < section.splits; i++) {
+            int record = position + i * SPLIT_RECORD_SIZE;
+            int date = reader.getInt(record);
+            if (days == section.days || (days > 1 && date >= dates[0] && date < dates[days - 1])) {
+                splits.add(new SplitEvent(date, reader.getDouble(record + 8), reader.getDouble(record + 16),
+                        reader.getDouble(record + 24)));
+            }
+        }
+        Metrics.record(Metrics.Phase.INGEST, started, allocated);
+        Metrics.ingested(days);
+        return new PriceSeries(ticker, dates, open, high, low, close, 0, days,
+                Collections.unmodifiableList(splits));
+    }
+
+    /* Returns the index of the first day of a section on or after 'date', or its number of days if there is none */
+    private int firstOnOrAfter(Section section, int date) {
+        int base = (int) section.offset;
+        int low = 0;
+        int high = section.days;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(base + 4 * middle) < date) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public List<String> companyNames(String ticker) {
+        String name = companyName(ticker);
+        return (name == null) ? Collections.<String>emptyList() : Collections.singletonList(name);
+    }
+
+    public Map<String, String> companies() {
+        Map<String, String> companies = new LinkedHashMap<String, String>();
+        for (Section section : index.values()) {
+            companies.put(section.ticker, section.name);
+        }
+        return companies;
+    }
+
+    public PriceSeries priceVolume(String ticker) {
+        return load(ticker);
+    }
+
+    /* The range is read from the same adjusted section as the full history, so it is adjusted the same way */
+    public PriceSeries priceVolume(String ticker, String beginningDate, String endDate) {
+        try {
+            return load(ticker, TradeDate.parse(beginningDate), TradeDate.parse(endDate));
+        }
+        catch (IllegalArgumentException ex) {
+            return new PriceSeries.Builder(ticker, 0).build();
+        }
+    }
+
+    /* Found by binary search over the mapped dates */
+    public int[] firstAndLastDay(String ticker, int beginDate, int endDate) {
+        Section section = index.get(key(ticker));
+        if (section == null) {
+            return null;
+        }
+        int from = firstOnOrAfter(section, beginDate);
+        int to = (endDate == Integer.MAX_VALUE) ? section.days : firstOnOrAfter(section, endDate + 1);
+        if (from >= to) {
+            return null;
+        }
+        int base = (int) section.offset;
+        return new int[] {buffer.getInt(base + 4 * from), buffer.getInt(base + 4 * (to - 1))};
+    }
+
+    /* Every lookup reads the mapped file through its own view of the buffer */
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* Method that creates or brings the snapshot at 'file' up to date with the database. Tickers that are already in
+       the snapshot only fetch the rows after their last day; new tickers fetch their full history.
+     */
+    public static void refresh(Path file, PriceQueries queries) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        PriceSnapshot old = Files.exists(file) ? open(file) : null;
+        int newRows = 0;
+
+        try {
+            /* Every company in the database, in ticker order */
+            Map<String, String> companies = queries.companies();
+
+            List<PriceSeries> refreshed = new ArrayList<PriceSeries>();
+            List<String> names = new ArrayList<String>();
+            for (Map.Entry<String, String> company : companies.entrySet()) {
+                String ticker = company.getKey();
+                PriceSeries stored = (old == null) ? null : old.load(ticker);
+                PriceSeries series;
+                if (stored == null || stored.isEmpty()) {
+                    series = queries.priceVolume(ticker);
+                    newRows += series.size();
+                }
+                else {
+                    series = append(queries, stored);
+                    newRows += series.size() - stored.size();
+                }
+                if (!series.isEmpty()) {
+                    refreshed.add(series);
+                    names.add(company.getValue());
+                }
+            }
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            write(temp, refreshed, names);
+            if (old != null) {
+                old.close();
+                old = null;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.printf("Snapshot %s refreshed: %d tickers, %d new trading days (%d ms)%n", file,
+                    refreshed.size(), newRows, (System.nanoTime() - startTime) / 1000000);
+        }
+        finally {
+            if (old != null) {
+                old.close();
+            }
+        }
+    }
+
+    /* Method that fetches the days after the last day of 'stored' and returns the combined series. The split detector
+       runs over the new rows (most recent first) and then over the last stored day, which gives the divisor that now
+       applies to every stored day.
+     */
+    private static PriceSeries append(PriceQueries queries, PriceSeries stored) throws SQLException {
+        String ticker = stored.ticker;
+        int last = stored.size() - 1;
+        PriceSeries.Builder series = new PriceSeries.Builder(ticker, stored.size() + 16);
+        SplitDetector splits = new SplitDetector();
+        if (queries.priceVolumeAfter(ticker, stored.date(last), series, splits) == 0) {
+            return stored;
+        }
+
+        /* The last stored day was the most recent day when it was written, so its prices are unadjusted */
+        double divisor = splits.next(stored.date(last), stored.open(last), stored.close(last));
+        for (int i = last; i >= 0; i--) {
+            series.prepend(stored.date(i), stored.open(i) / divisor, stored.high(i) / divisor,
+                    stored.low(i) / divisor, stored.close(i) / divisor);
+        }
+
+        List<SplitEvent> allSplits = new ArrayList<SplitEvent>(splits.splits());
+        allSplits.addAll(stored.splits());
+        return series.build(allSplits);
+    }
+
+    /* Method that writes a snapshot file holding the given series and company names */
+    private static void write(Path file, List<PriceSeries> series, List<String> names) throws IOException {
+        /* Size of the header and index, which decides where the first data section starts */
+        long indexSize = 12;
+        for (int i = 0; i < series.size(); i++) {
+            indexSize += stringSize(series.get(i).ticker) + stringSize(names.get(i)) + 16;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate((int) indexSize);
+        index.putInt(MAGIC).putInt(VERSION).putInt(series.size());
+        long offset = align(indexSize);
+        for (int i = 0; i < series.size(); i++) {
+            PriceSeries s = series.get(i);
+            writeString(index, s.ticker);
+            writeString(index, names.get(i));
+            index.putLong(offset).putInt(s.size()).putInt(s.splits().size());
+            offset += sectionSize(s);
+        }
+        index.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            long position = align(indexSize);
+            for (PriceSeries s : series) {
+                ByteBuffer section = ByteBuffer.allocate((int) sectionSize(s));
+                int days = s.size();
+                for (int i = 0; i < days; i++) {
+                    section.putInt(s.date(i));
+                }
+                section.position((int) align(4L * days));
+                for (int i = 0; i < days; i++) {
+                    section.putDouble(s.open(i));
+                }
+                for (int i = 0; i < days; i++) {
+                    section.putDouble(s.high(i));
+                }
+                for (int i = 0; i < days; i++) {
+                    section.putDouble(s.low(i));
+                }
+                for (int i = 0; i < days; i++) {
+                    section.putDouble(s.close(i));
+                }
+                for (SplitEvent split : s.splits()) {
+                    section.putInt(split.date).putInt(0).putDouble(split.ratio).putDouble(split.closePrice)
+                            .putDouble(split.nextOpenPrice);
+                }
+                section.flip();
+                while (section.hasRemaining()) {
+                    position += channel.write(section, position);
+                }
+            }
+            channel.force(false);
+        }
+    }
+
+    private static long sectionSize(PriceSeries s) {
+        return align(4L * s.size()) + 32L * s.size() + (long) SPLIT_RECORD_SIZE * s.splits().size();
+    }
+
+    /* Reads 'values.length' doubles starting at day 'from' of a column of 'days' doubles that begins at 'position',
+       and returns the position of the next column
+     */
+    private static int readDoubles(ByteBuffer reader, int position, int days, int from, double[] values) {
+        reader.position(position + 8 * from);
+        reader.asDoubleBuffer().get(values);
+        return position + 8 * days;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static String key(String ticker) {
+        return ticker.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static int stringSize(String s) {
+        return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeString(ByteBuffer buffer, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,279 @@
+/* Donald W. Strong
+ *
+ *  This class runs StockTrading as a local HTTP service instead of an interactive prompt, so other programs can ask
+ *  for the split history and investment strategy result of a ticker. A request looks like
+ *      GET /query?ticker=IBM
+ *      GET /query?ticker=IBM&start=2001.01.01&end=2001.06.01
+ *  and is answered with one line of JSON holding the company name, the number of trading days, the splits in the
+ *  series and the strategy result (using the strategy parameters from the params file), e.g.
+ *      {"ticker":"IBM","name":"International Business Machines","tradingDays":7000,"splits":[{"date":"2011.04.28",
+ *       "ratio":"3:2","close":2.67,"nextOpen":1.82}],"executed":true,"transactions":670,"cash":-4541.13}
+ *  Unknown tickers get a 404 and malformed requests a 400, each with an "error" field.
+ *
+ *  Requests are handled concurrently on a fixed pool of "service.threads" threads. The program is built for Java 11,
+ *  which has no virtual threads, so they are looked up by reflection when the service starts: they are used only when
+ *  the program runs on Java 21 or later, and on Java 17 or earlier requests always go to the fixed pool. Price
+ *  histories come from a SeriesCache (of "service.cache" tickers, each read again after "service.ttl" seconds), so
+ *  a hot ticker (or any date range of it) is answered without touching the database, and the database only ever sees
+ *  one query per cache miss over a pool of "connections" connections.
+ */
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.time.DateTimeException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class QueryService {
+
+    /* Defaults for the "service.*" settings in the params file */
+    static final int DEFAULT_PORT = 8080;
+    static final int DEFAULT_THREADS = 200;
+    static final int DEFAULT_BACKLOG = 1024;
+
+    /* Variable declarations */
+    private final PriceDataSource source;
+    private final SeriesCache cache;
+    private final StrategyParameters params;
+    private final Map<String, String> companies = new HashMap<String, String>();
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    /* Constructor for a service over a thread safe price source. The company list is read once, up front, so
+       unknown tickers are turned away without a query.
+     */
+    public QueryService(PriceDataSource source, int cacheCapacity, StrategyParameters params) throws SQLException {
+        this(source, cacheCapacity, SeriesCache.DEFAULT_TTL_SECONDS, params);
+    }
+
+    public QueryService(PriceDataSource source, int cacheCapacity, int cacheTtlSeconds, StrategyParameters params)
+            throws SQLException {
+        this.source = source;
+        this.cache = new SeriesCache(source, cacheCapacity, cacheTtlSeconds);
+        this.params = params;
+        for (Map.Entry<String, String> company : source.companies().entrySet()) {
+            companies.put(company.getKey().trim().toUpperCase(Locale.ROOT), company.getValue());
+        }
+    }
+
+    /* Method that starts a service as described by the params file and keeps it running until the JVM is stopped.
+       The prices come from the flat file named by "prices.file" if there is one, otherwise from the database. 'port'
+       overrides "service.port" unless it is 0.
+     */
+    public static void serve(Properties connectprops, StrategyParameters params, PriceDataSource fileSource, int port)
+            throws SQLException, IOException {
+        PriceDataSource source = fileSource;
+        if (source == null) {
+            int connections = Integer.parseInt(connectprops.getProperty("connections",
+                    String.valueOf(BatchBacktest.DEFAULT_CONNECTIONS)).trim());
+            source = new PooledPriceSource(new ConnectionPool(connectprops, connections));
+        }
+        if (port == 0) {
+            port = Integer.parseInt(connectprops.getProperty("service.port", String.valueOf(DEFAULT_PORT)).trim());
+        }
+        int cacheCapacity = Integer.parseInt(connectprops.getProperty("service.cache",
+                String.valueOf(SeriesCache.DEFAULT_CAPACITY)).trim());
+        int cacheTtl = Integer.parseInt(connectprops.getProperty("service.ttl",
+                String.valueOf(SeriesCache.DEFAULT_TTL_SECONDS)).trim());
+        int threads = Integer.parseInt(connectprops.getProperty("service.threads",
+                String.valueOf(DEFAULT_THREADS)).trim());
+
+        QueryService service = new QueryService(source, cacheCapacity, cacheTtl, params);
+        String threading = service.start(port, threads);
+        System.out.printf("Serving %d tickers on http://localhost:%d/query (%s, cache of %d tickers)...%n",
+                service.companies.size(), service.port(), threading, cacheCapacity);
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+    }
+
+    /* Starts listening on 'port' (0 picks a free port) of the loopback interface. Returns a description of how
+       requests are being run.
+     */
+    public String start(int port, int threads) throws IOException {
+        /* Virtual threads are looked up by reflection, so the program still builds and runs on Java 11 (see the top of
+           the file)
+         */
+        boolean virtualThreads = true;
+        try {
+            handlers = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException ex) {
+            handlers = Executors.newFixedThreadPool(threads);
+            virtualThreads = false;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_BACKLOG);
+        server.createContext("/query", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+        return virtualThreads ? "virtual threads" : threads + " threads";
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public SeriesCache cache() {
+        return cache;
+    }
+
+    /* Stops accepting requests, waits briefly for the ones in progress and closes the price source */
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            handlers.shutdown();
+            try {
+                handlers.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            source.close();
+        }
+        catch (SQLException | IOException ex) {
+            System.out.printf("Could not close price source: %s%n", ex.getMessage());
+        }
+    }
+
+    /* Answers one request (see the top of the file) */
+    private void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            respond(exchange, 200, answer(query));
+        }
+        catch (NotFound ex) {
+            respond(exchange, 404, error(ex.getMessage()));
+        }
+        catch (IllegalArgumentException | DateTimeException ex) {
+            respond(exchange, 400, error(ex.getMessage()));
+        }
+        catch (SQLException ex) {
+            respond(exchange, 500, error("SQLException: " + ex.getMessage()));
+        }
+        catch (RuntimeException ex) {
+            respond(exchange, 500, error(ex.toString()));
+        }
+        finally {
+            Metrics.record(Metrics.Phase.REQUEST, started, allocated);
+        }
+    }
+
+    /* Looks the series up in the cache, runs the strategy over it and returns the JSON answer */
+    String answer(Map<String, String> query) throws SQLException {
+        String ticker = query.get("ticker");
+        String start = query.get("start");
+        String end = query.get("end");
+        if (ticker == null || ticker.trim().length() == 0) {
+            throw new IllegalArgumentException("Missing ticker");
+        }
+        if ((start == null) != (end == null)) {
+            throw new IllegalArgumentException("Give both start and end dates (YYYY.MM.DD) or neither");
+        }
+        ticker = ticker.trim();
+        String name = companies.get(ticker.toUpperCase(Locale.ROOT));
+        if (name == null) {
+            throw new NotFound(ticker + " not found in database");
+        }
+
+        PriceSeries series = (start == null) ? cache.get(ticker)
+                : cache.get(ticker, TradeDate.parse(start), TradeDate.parse(end));
+        TradingResult result = StockTrading.runStrategy(series, new SimpleMovingAverage(params.window), params, null);
+
+        DecimalFormat df = new DecimalFormat("#.##", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"ticker\":");
+        quote(json, ticker);
+        json.append(",\"name\":");
+        quote(json, name);
+        json.append(",\"tradingDays\":").append(series.size()).append(",\"splits\":[");
+        for (int i = 0; i < series.splits().size(); i++) {
+            SplitEvent split = series.splits().get(i);
+            json.append((i == 0) ? "{" : ",{").append("\"date\":\"").append(TradeDate.format(split.date))
+                    .append("\",\"ratio\":\"").append(split.ratioName()).append("\",\"close\":")
+                    .append(split.closePrice).append(",\"nextOpen\":").append(split.nextOpenPrice).append('}');
+        }
+        json.append("],\"executed\":").append(result.executed);
+        if (result.executed) {
+            json.append(",\"transactions\":").append(result.transCount).append(",\"cash\":")
+                    .append(df.format(result.cash));
+        }
+        return json.append('}').toString();
+    }
+
+    /* Splits "a=1&b=2" into a map, decoding each key and value */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        quote(json, message);
+        return json.append('}').toString();
+    }
+
+    /* Appends 's' as a JSON string */
+    private static void quote(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /* Thrown for a ticker that is not in the company list */
+    private static class NotFound extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        NotFound(String message) {
+            super(message);
+        }
+    }
+}
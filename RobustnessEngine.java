@@ -0,0 +1,341 @@
+/* Donald W. Strong
+ *
+ *  This class shows how much the net cash of the investment strategy depends on the particular history it was run
+ *  over, in two ways:
+ *      Monte Carlo = the strategy is run over thousands of made up histories that are built from the real one by a
+ *                    block bootstrap: each day is reduced to its overnight gap (open / previous close) and its
+ *                    intraday move (close / open), and a path strings together blocks of consecutive days drawn at
+ *                    random from the whole history, starting from the real first day. The net cash, transactions
+ *                    and largest drawdown of all paths are summarized by their mean and percentiles.
+ *      walk-forward = the history is cut into consecutive train and test windows. The parameter grid of
+ *                     ParameterSweep is swept over each train window and its best parameters are then run over the
+ *                     test window that follows, which they have not seen.
+ *  The paths are run by one worker per core. Each worker allocates its scratch arrays and moving average once and
+ *  then takes the next path from a shared counter until none are left, so running a path allocates nothing. Every
+ *  path draws from its own random number sequence (seeded from its number), so the results do not depend on which
+ *  worker ran it.
+ *
+ *  "java StockTrading readerparams.txt --robust=TICKER" runs both over one ticker with the strategy parameters of the
+ *  params file and these settings:
+ *      montecarlo.paths=10000      montecarlo.block=20 (days per block; 1 resamples single days)
+ *      montecarlo.seed=1           walkforward.train=1000     walkforward.test=250 (trading days)
+ *  along with the sweep.* grid (see ParameterSweep) for the train windows.
+ */
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class RobustnessEngine {
+
+    /* Percentiles printed for each statistic */
+    private static final double[] PERCENTILES = {0.05, 0.25, 0.50, 0.75, 0.95};
+
+    /* The outcome of every path, indexed by path number */
+    public static class Paths {
+        public final double[] cash;
+        public final double[] drawdown;
+        public final int[] transCount;
+
+        Paths(int count) {
+            cash = new double[count];
+            drawdown = new double[count];
+            transCount = new int[count];
+        }
+    }
+
+    /* One train and test window of a walk-forward run */
+    public static class Window {
+        public final int trainStart;
+        public final int testStart;
+        public final int testEnd;
+        public final StrategyParameters params;
+        public final double trainCash;
+        public final TradingResult test;
+
+        Window(int trainStart, int testStart, int testEnd, StrategyParameters params, double trainCash,
+               TradingResult test) {
+            this.trainStart = trainStart;
+            this.testStart = testStart;
+            this.testEnd = testEnd;
+            this.params = params;
+            this.trainCash = trainCash;
+            this.test = test;
+        }
+    }
+
+    /* The arrays and average a worker reuses for every path it runs */
+    private class Scratch {
+        final double[] open = new double[days];
+        final double[] close = new double[days];
+        final SimpleMovingAverage average = new SimpleMovingAverage(params.window);
+        long random;
+    }
+
+    /* Variable declarations */
+    private final PriceSeries series;
+    private final StrategyParameters params;
+    private final int days;
+    private final double[] gap;
+    private final double[] move;
+
+    public RobustnessEngine(PriceSeries series, StrategyParameters params) {
+        this.series = series;
+        this.params = params;
+        days = series.size();
+        gap = new double[days];
+        move = new double[days];
+        for (int i = 0; i < days; i++) {
+            gap[i] = (i > 0) ? series.open(i) / series.close(i - 1) : 1;
+            move[i] = series.close(i) / series.open(i);
+        }
+    }
+
+    /* Method that runs 'count' bootstrap paths built from blocks of 'block' days, seeded with 'seed' */
+    public Paths monteCarlo(int count, int block, long seed) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of paths can't be negative: " + count);
+        }
+        if (days <= params.window + 1) {
+            throw new IllegalArgumentException("The series needs more than " + (params.window + 1) +
+                    " trading days: " + days);
+        }
+        if (block < 1) {
+            throw new IllegalArgumentException("Block must be at least 1 day: " + block);
+        }
+        int blockDays = Math.min(block, days - 1);
+        Paths paths = new Paths(count);
+
+        /* One worker per thread of the common pool and one for the calling thread, which joins in. Paths are handed
+           out one at a time, so the workers stay busy even if some paths run slower.
+         */
+        int workers = Math.max(1, Math.min(count, ForkJoinPool.getCommonPoolParallelism() + 1));
+        AtomicInteger nextPath = new AtomicInteger();
+        IntStream.range(0, workers).parallel().forEach(w -> {
+            Scratch scratch = new Scratch();
+            for (int path = nextPath.getAndIncrement(); path < count; path = nextPath.getAndIncrement()) {
+                scratch.random = seed * 0x9e3779b97f4a7c15L + path;
+                bootstrap(scratch, blockDays);
+                trade(scratch, paths, path);
+            }
+        });
+        return paths;
+    }
+
+    /* Fills the scratch arrays with a path: the real first day, then random blocks of the real days' gaps and moves */
+    private void bootstrap(Scratch scratch, int blockDays) {
+        double[] open = scratch.open;
+        double[] close = scratch.close;
+        open[0] = series.open(0);
+        close[0] = series.close(0);
+        int starts = days - blockDays;
+        int day = 1;
+        while (day < days) {
+            int from = 1 + (int) (((nextRandom(scratch) >>> 32) * starts) >>> 32);
+            int end = Math.min(from + blockDays, from + days - day);
+            for (int i = from; i < end; i++, day++) {
+                open[day] = close[day - 1] * gap[i];
+                close[day] = open[day] * move[i];
+            }
+        }
+    }
+
+    /* The next number of the path's random sequence (SplitMix64) */
+    private static long nextRandom(Scratch scratch) {
+        long z = (scratch.random += 0x9e3779b97f4a7c15L);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /* Runs the strategy over the path in the scratch arrays the way StockTrading.runStrategy does, also following the
+       equity (cash plus the shares held at the day's close) to find its largest fall from a previous high
+     */
+    private void trade(Scratch scratch, Paths paths, int path) {
+        double[] open = scratch.open;
+        double[] close = scratch.close;
+        SimpleMovingAverage average = scratch.average;
+        int window = params.window;
+        int lot = params.lotSize;
+        double cash = 0;
+        int numOfShares = 0;
+        int transCount = 0;
+        double peak = 0;
+        double drawdown = 0;
+
+        average.reset();
+        for (int i = 0; i < window; i++) {
+            average.update(close[i]);
+        }
+        for (int today = window; today < days - 1; today++) {
+            double avgClosePrice = average.value();
+            if (close[today] < avgClosePrice && close[today] / open[today] < params.buyThreshold) {
+                transCount++;
+                numOfShares += lot;
+                cash -= (lot * open[today + 1]);
+                cash -= params.commission;
+            }
+            else if (numOfShares >= lot && open[today] > avgClosePrice &&
+                    open[today] / close[today - 1] > params.sellThreshold) {
+                double todaysAvgPrice = (open[today] + close[today]) / 2;
+                transCount++;
+                numOfShares -= lot;
+                cash += (lot * todaysAvgPrice);
+                cash -= params.commission;
+            }
+            average.update(close[today]);
+
+            double equity = cash + numOfShares * close[today];
+            peak = Math.max(peak, equity);
+            drawdown = Math.max(drawdown, peak - equity);
+        }
+        if (numOfShares > 0) {
+            cash += (open[days - 1] * numOfShares);
+            transCount++;
+        }
+        drawdown = Math.max(drawdown, Math.max(peak, cash) - cash);
+
+        paths.cash[path] = cash;
+        paths.drawdown[path] = drawdown;
+        paths.transCount[path] = transCount;
+    }
+
+    /* Method that cuts the series into windows of 'train' days followed by 'test' days, stepping by 'test' days, and
+       runs the best parameters of each train window (from 'grid') over its test window. The average of a test
+       window is primed with the days before it, so trading starts on its first day.
+     */
+    public Window[] walkForward(ParameterSweep.Grid grid, int train, int test) {
+        if (train < 2 || test < 1) {
+            throw new IllegalArgumentException("Expected at least 2 train days and 1 test day: " + train + ", " + test);
+        }
+        int count = Math.max(0, (days - train) / test);
+        Window[] windows = new Window[count];
+        for (int w = 0; w < count; w++) {
+            int trainStart = w * test;
+            int testStart = trainStart + train;
+            int testEnd = testStart + test;
+            PriceSeries trainDays = series.between(series.date(trainStart), series.date(testStart - 1));
+            List<ParameterSweep.Result> best = grid.sweep(trainDays, 1);
+            if (best.isEmpty()) {
+                windows[w] = new Window(trainStart, testStart, testEnd, null, 0, new TradingResult(false, 0, 0));
+                continue;
+            }
+            StrategyParameters chosen = best.get(0).params;
+            int from = Math.max(0, testStart - chosen.window);
+            PriceSeries testDays = series.between(series.date(from), series.date(testEnd - 1));
+            TradingResult result = StockTrading.runStrategy(testDays, new SimpleMovingAverage(chosen.window), chosen,
+                    null);
+            windows[w] = new Window(trainStart, testStart, testEnd, chosen, best.get(0).cash, result);
+        }
+        return windows;
+    }
+
+    /* Method that reads the settings from the params file (see the top of this file), runs the Monte Carlo paths and
+       the walk-forward windows over 'series' and prints their summaries
+     */
+    public static void run(PriceSeries series, Properties props, StrategyParameters params) {
+        int count = Integer.parseInt(props.getProperty("montecarlo.paths", "10000").trim());
+        int block = Integer.parseInt(props.getProperty("montecarlo.block", "20").trim());
+        long seed = Long.parseLong(props.getProperty("montecarlo.seed", "1").trim());
+        int train = Integer.parseInt(props.getProperty("walkforward.train", "1000").trim());
+        int test = Integer.parseInt(props.getProperty("walkforward.test", "250").trim());
+        DecimalFormat df = new DecimalFormat("#.##");
+
+        /* Check the settings before anything runs, so a bad one is reported without waiting for the paths */
+        if (count < 1 || block < 1) {
+            throw new IllegalArgumentException("montecarlo.paths and montecarlo.block must be at least 1: " + count +
+                    ", " + block);
+        }
+        if (train < 2 || test < 1) {
+            throw new IllegalArgumentException("walkforward.train must be at least 2 and walkforward.test at least " +
+                    "1: " + train + ", " + test);
+        }
+
+        if (series.size() <= params.window + 1) {
+            System.out.printf("%s has too few trading days for a %d day window.%n%n", series.ticker, params.window);
+            return;
+        }
+        RobustnessEngine engine = new RobustnessEngine(series, params);
+        TradingResult actual = StockTrading.runStrategy(series, new SimpleMovingAverage(params.window), params, null);
+        System.out.printf("Running %d paths (blocks of %d days) over %d trading days of %s...%n", count, block,
+                series.size(), series.ticker);
+        long startTime = System.nanoTime();
+        Paths paths = engine.monteCarlo(count, block, seed);
+        long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.printf("Net cash of the actual history: %s (%d transactions)%n", df.format(actual.cash),
+                actual.transCount);
+        System.out.printf("%-13s %12s", "", "Mean");
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %11s", (percentile == 0.5) ? "Median" : Math.round(percentile * 100) + "%");
+        }
+        System.out.println();
+        printRow("Net cash", paths.cash, df);
+        printRow("Drawdown", paths.drawdown, df);
+        double[] transactions = new double[count];
+        int profitable = 0;
+        for (int i = 0; i < count; i++) {
+            transactions[i] = paths.transCount[i];
+            profitable += (paths.cash[i] > 0) ? 1 : 0;
+        }
+        printRow("Transactions", transactions, df);
+        System.out.printf("Paths with a profit: %s%%%n", df.format(100.0 * profitable / Math.max(count, 1)));
+        System.out.printf("Ran %d paths in %d ms%n%n", count, elapsed);
+
+        ParameterSweep.Grid grid = new ParameterSweep.Grid(props);
+        System.out.printf("Walking forward over %s: %d day train windows (%d combinations each), %d day test " +
+                "windows...%n", series.ticker, train, grid.size(), test);
+        startTime = System.nanoTime();
+        Window[] windows = engine.walkForward(grid, train, test);
+        elapsed = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.printf("%-11s %-11s %-11s %7s %10s %11s %12s %14s %13s%n", "Train from", "Test from", "Test to",
+                "Window", "Buy below", "Sell above", "Train cash", "Test cash", "Transactions");
+        double testCash = 0;
+        int testProfitable = 0;
+        for (Window window : windows) {
+            String trainFrom = TradeDate.format(series.date(window.trainStart));
+            String testFrom = TradeDate.format(series.date(window.testStart));
+            String testTo = TradeDate.format(series.date(window.testEnd - 1));
+            if (window.params == null || !window.test.executed) {
+                System.out.printf("%-11s %-11s %-11s %7s %10s %11s %12s %14s %13s%n", trainFrom, testFrom, testTo,
+                        "-", "-", "-", "-", "-", "-");
+                continue;
+            }
+            System.out.printf("%-11s %-11s %-11s %7d %10s %11s %12s %14s %13d%n", trainFrom, testFrom, testTo,
+                    window.params.window, window.params.buyThreshold, window.params.sellThreshold,
+                    df.format(window.trainCash), df.format(window.test.cash), window.test.transCount);
+            testCash += window.test.cash;
+            testProfitable += (window.test.cash > 0) ? 1 : 0;
+        }
+        System.out.printf("Test net cash: %s in total, profitable in %d of %d windows (%d ms)%n%n",
+                df.format(testCash), testProfitable, windows.length, elapsed);
+    }
+
+    /* Prints the mean and percentiles of one statistic over all paths */
+    private static void printRow(String name, double[] values, DecimalFormat df) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (double value : sorted) {
+            sum += value;
+        }
+        System.out.printf("%-13s %12s", name, df.format(sorted.length == 0 ? 0 : sum / sorted.length));
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %11s", df.format(percentile(sorted, percentile)));
+        }
+        System.out.println();
+    }
+
+    /* The value below which 'fraction' of the sorted values fall (nearest rank) */
+    static double percentile(double[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+}
@@ -0,0 +1,78 @@
+/* Donald W. Strong
+ *
+ *  This class defines a rolling minimum or maximum over the last 'length' values. It keeps a monotonic queue of
+ *  candidate values in a pair of ring buffers: a new value removes every older candidate it beats, and candidates
+ *  that have aged out of the window are dropped from the front. Each value enters and leaves the queue once, so an
+ *  update costs O(1) amortized no matter how long the window is.
+ */
+public class RollingExtreme implements Indicator {
+
+    /* Variable declarations */
+    private final int length;
+    private final boolean maximum;
+    private final double[] values;
+    private final long[] positions;
+    private int head;
+    private int size;
+    private long seen;
+
+    /* Constructor for a rolling extreme. If 'maximum' is true this tracks the largest value, otherwise the smallest */
+    public RollingExtreme(int length, boolean maximum) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Window length must be at least 1: " + length);
+        }
+        this.length = length;
+        this.maximum = maximum;
+        this.values = new double[length];
+        this.positions = new long[length];
+    }
+
+    public static RollingExtreme minimum(int length) {
+        return new RollingExtreme(length, false);
+    }
+
+    public static RollingExtreme maximum(int length) {
+        return new RollingExtreme(length, true);
+    }
+
+    public void update(double value) {
+        /* Drop the oldest candidate if it has slid out of the window */
+        if (size > 0 && positions[head] <= seen - length) {
+            head = (head + 1) % length;
+            size--;
+        }
+
+        /* Drop every candidate from the back that the new value beats */
+        while (size > 0) {
+            int tail = (head + size - 1) % length;
+            if (maximum ? values[tail] > value : values[tail] < value) {
+                break;
+            }
+            size--;
+        }
+
+        int tail = (head + size) % length;
+        values[tail] = value;
+        positions[tail] = seen;
+        size++;
+        seen++;
+    }
+
+    public double value() {
+        return values[head];
+    }
+
+    public boolean isReady() {
+        return seen >= length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void reset() {
+        head = 0;
+        size = 0;
+        seen = 0;
+    }
+}
@@ -0,0 +1,58 @@
+/* Donald W. Strong
+ *
+ *  This class defines a rolling (population) standard deviation over the last 'length' values. It keeps a running sum
+ *  and running sum of squares of the values in the window, both measured from the first value seen, which keeps the
+ *  subtraction in the variance formula well conditioned for price data.
+ */
+public class RollingStandardDeviation implements Indicator {
+
+    /* Variable declarations */
+    private final RollingWindow window;
+    private double shift = Double.NaN;
+    private double sum;
+    private double sumOfSquares;
+
+    public RollingStandardDeviation(int length) {
+        this.window = new RollingWindow(length);
+    }
+
+    public void update(double value) {
+        if (Double.isNaN(shift)) {
+            shift = value;
+        }
+        double evicted = window.push(value);
+        double added = value - shift;
+        sum += added;
+        sumOfSquares += added * added;
+        if (!Double.isNaN(evicted)) {
+            double removed = evicted - shift;
+            sum -= removed;
+            sumOfSquares -= removed * removed;
+        }
+    }
+
+    public double value() {
+        int n = window.size();
+        if (n == 0) {
+            return 0;
+        }
+        double mean = sum / n;
+        double variance = sumOfSquares / n - mean * mean;
+        return variance > 0 ? Math.sqrt(variance) : 0;
+    }
+
+    public boolean isReady() {
+        return window.isFull();
+    }
+
+    public int length() {
+        return window.length();
+    }
+
+    public void reset() {
+        window.clear();
+        shift = Double.NaN;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+}
@@ -0,0 +1,65 @@
+/* Donald W. Strong
+ *
+ *  This class defines a fixed length ring buffer of doubles. It holds the last 'length' values pushed into it and
+ *  hands back the value that falls out of the window on every push, which lets the indicators keep running totals
+ *  instead of re-summing the whole window each day.
+ */
+public class RollingWindow {
+
+    /* Variable declarations */
+    private final double[] values;
+    private int next;
+    private int count;
+
+    /* Constructor for an empty window of the given length */
+    public RollingWindow(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Window length must be at least 1: " + length);
+        }
+        this.values = new double[length];
+    }
+
+    /* Adds a value to the window. Returns the value that was evicted, or NaN if the window was not yet full */
+    public double push(double value) {
+        double evicted = Double.NaN;
+        if (count == values.length) {
+            evicted = values[next];
+        }
+        else {
+            count++;
+        }
+        values[next] = value;
+        next++;
+        if (next == values.length) {
+            next = 0;
+        }
+        return evicted;
+    }
+
+    /* Returns the i-th oldest value currently held in the window (0 is the oldest) */
+    public double get(int i) {
+        int start = (count == values.length) ? next : 0;
+        int index = start + i;
+        if (index >= values.length) {
+            index -= values.length;
+        }
+        return values[index];
+    }
+
+    public boolean isFull() {
+        return count == values.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int length() {
+        return values.length;
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+    }
+}
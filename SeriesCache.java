@@ -0,0 +1,136 @@
+/* Donald W. Strong
+ *
+ *  This class keeps the full split adjusted price history of the most recently used tickers in memory, in front of a
+ *  thread safe PriceDataSource:
+ *      get(ticker) = the full history, read from the source only if the ticker is not cached
+ *      get(ticker, beginDate, endDate) = a date range, cut out of the cached full history by binary search (see
+ *                                        PriceSeries.between), so range queries never go back to the source
+ *  At most 'capacity' tickers are kept; the least recently used one is dropped to make room. A ticker is also read
+ *  again once it has been cached for 'ttlSeconds' ("service.ttl" in the params file), so prices added to the source
+ *  show up within that time without a restart; 0 keeps the tickers until they are dropped or invalidated. If several
+ *  threads ask for the same uncached ticker at once, only the first one reads it from the source and the others wait
+ *  for it. Hits and misses are counted in Metrics.
+ */
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+public class SeriesCache {
+
+    /* Default number of tickers kept in memory */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /* Default number of seconds a ticker stays cached */
+    static final int DEFAULT_TTL_SECONDS = 300;
+
+    /* Variable declarations */
+    private final PriceDataSource source;
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Cached> entries;
+
+    /* A cached ticker: its series, once read, and when the read started */
+    private static final class Cached {
+        final CompletableFuture<PriceSeries> series = new CompletableFuture<PriceSeries>();
+        final long loadedNanos = System.nanoTime();
+    }
+
+    public SeriesCache(PriceDataSource source, int capacity) {
+        this(source, capacity, DEFAULT_TTL_SECONDS);
+    }
+
+    public SeriesCache(PriceDataSource source, int capacity, int ttlSeconds) {
+        if (!source.isThreadSafe()) {
+            throw new IllegalArgumentException("A series cache needs a price source that can be shared between " +
+                    "threads");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1: " + capacity);
+        }
+        if (ttlSeconds < 0) {
+            throw new IllegalArgumentException("Cache time to live can't be negative: " + ttlSeconds);
+        }
+        this.source = source;
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        /* Access ordered, so the eldest entry is always the least recently used one */
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > SeriesCache.this.capacity;
+            }
+        };
+    }
+
+    /* Returns the full price history of a ticker, or an empty series if it has no prices */
+    public PriceSeries get(String ticker) throws SQLException {
+        String key = ticker.toUpperCase(Locale.ROOT);
+        Cached entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || (ttlNanos > 0 && System.nanoTime() - entry.loadedNanos > ttlNanos)) {
+                entry = new Cached();
+                entries.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (!load) {
+            Metrics.CACHE_HITS.increment();
+            return await(entry.series);
+        }
+        Metrics.CACHE_MISSES.increment();
+        try {
+            PriceSeries series = source.priceVolume(ticker);
+            entry.series.complete(series);
+            return series;
+        }
+        /* Don't cache a failed query, so the next request tries again */
+        catch (SQLException | RuntimeException ex) {
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+            entry.series.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /* Returns the days of a ticker from 'beginDate' through 'endDate' (epoch days, inclusive) */
+    public PriceSeries get(String ticker, int beginDate, int endDate) throws SQLException {
+        return get(ticker).between(beginDate, endDate);
+    }
+
+    /* Drops a ticker, so the next request reads it from the source again */
+    public void invalidate(String ticker) {
+        synchronized (entries) {
+            entries.remove(ticker.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /* Waits for another thread to finish reading a ticker, rethrowing its SQLException if it failed */
+    private static PriceSeries await(CompletableFuture<PriceSeries> entry) throws SQLException {
+        try {
+            return entry.join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
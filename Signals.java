@@ -0,0 +1,125 @@
+/* Donald W. Strong
+ *
+ *  This class is the signal stage of the investment strategy: it works out, for a whole series at once, on which days
+ *  the rules of runStrategy could buy or sell, leaving only the position and cash bookkeeping to be done day by day.
+ *      ratios() = close / open and open / previous close for every day
+ *      movingAverage() = the rolling average of closing prices before every day, summed exactly as
+ *                        SimpleMovingAverage sums it
+ *      buyDays() = the days whose close is below the average and whose close / open is below the buy threshold
+ *      sellDays() = the days whose open is above the average and whose open / previous close is above the sell
+ *                   threshold (whether there are shares to sell is part of the bookkeeping)
+ *  Each of these is one straight loop over primitive arrays with no branches in its body. ratios() works element by
+ *  element, the shape the JIT compiles to SIMD instructions where the CPU has them (and to plain scalar code
+ *  everywhere else). movingAverage() carries a running sum from day to day, so it can't be split into lanes, but it
+ *  gives every day the same average as runStrategy, to the last bit. The day lists are built by always storing the
+ *  day and only moving on when it qualifies, so days that are hard to predict cost no branch mispredictions. The
+ *  lists come out sorted, so the bookkeeping only visits the days on which something can happen. ParameterSweep runs
+ *  every combination of its grid this way.
+ *
+ *  A build with the "vector" profile (mvn -Pvector, JDK 17 or later) also compiles vector/VectorSignals.java, which
+ *  computes ratios() with the incubating Vector API (jdk.incubator.vector). It is used when the program is run with
+ *  "--add-modules jdk.incubator.vector", unless -Dsignals.vector=false is given; otherwise the loops below are used.
+ *  Both give exactly the same results.
+ *
+ *  Only ParameterSweep uses this stage. runStrategy (and so getTradingInfo) still decides one day at a time: with a
+ *  single strategy every comparison is made once, so there is nothing to share that would pay for the arrays. Run
+ *  through this stage (with the averages worked out as SimpleMovingAverage does), the strategy benchmark was 1.5 to 3
+ *  times slower and allocated 48 bytes per day.
+ */
+public final class Signals {
+
+    /* The element by element part of the stage in another implementation (see VectorSignals) */
+    interface Stage {
+        void ratios(double[] open, double[] close, int days, double[] closeOverOpen, double[] openOverPrevClose);
+    }
+
+    /* The Vector API stage if it was built and its module is present, otherwise null */
+    private static final Stage VECTOR = vectorStage();
+
+    private Signals() {
+    }
+
+    /* Returns the name of the implementation in use, for the console */
+    public static String implementation() {
+        return (VECTOR != null) ? "Vector API" : "scalar";
+    }
+
+    private static Stage vectorStage() {
+        if (!Boolean.parseBoolean(System.getProperty("signals.vector", "true"))) {
+            return null;
+        }
+        try {
+            return (Stage) Class.forName("VectorSignals").getDeclaredConstructor().newInstance();
+        }
+        /* Not built with the vector profile, or run without the module */
+        catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    /* Fills closeOverOpen[i] with close[i] / open[i] and openOverPrevClose[i] with open[i] / close[i - 1] (0 for the
+       first day)
+     */
+    public static void ratios(double[] open, double[] close, int days, double[] closeOverOpen,
+                              double[] openOverPrevClose) {
+        if (VECTOR != null) {
+            VECTOR.ratios(open, close, days, closeOverOpen, openOverPrevClose);
+            return;
+        }
+        for (int i = 0; i < days; i++) {
+            closeOverOpen[i] = close[i] / open[i];
+        }
+        if (days > 0) {
+            openOverPrevClose[0] = 0;
+        }
+        for (int i = 1; i < days; i++) {
+            openOverPrevClose[i] = open[i] / close[i - 1];
+        }
+    }
+
+    /* Fills average[i], for every day i from 'window' on, with the average closing price of the 'window' days before
+       it. The sum is updated one day at a time with compensated addition, exactly as SimpleMovingAverage.update does,
+       so the averages match runStrategy's to the last bit (a difference of prefix sums can be off in the last
+       digits, enough to flip a day whose close is within rounding error of its average).
+     */
+    public static void movingAverage(double[] close, int window, int days, double[] average) {
+        double sum = 0;
+        double compensation = 0;
+        for (int i = 0; i < days; i++) {
+            if (i >= window) {
+                average[i] = sum / window;
+            }
+            double delta = (i < window) ? close[i] : close[i] - close[i - window];
+            double y = delta - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+    }
+
+    /* Writes the buying days in [from, to) to 'out', in order, and returns how many there are. 'out' needs room for
+       to - from + 1 days.
+     */
+    public static int buyDays(double[] close, double[] average, double[] closeOverOpen, double buyThreshold, int from,
+                              int to, int[] out) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            out[count] = i;
+            count += (close[i] < average[i] & closeOverOpen[i] < buyThreshold) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /* Writes the days in [from, to) on which the sell rule holds to 'out', in order, and returns how many there
+       are. 'out' needs room for to - from + 1 days.
+     */
+    public static int sellDays(double[] open, double[] average, double[] openOverPrevClose, double sellThreshold,
+                               int from, int to, int[] out) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            out[count] = i;
+            count += (open[i] > average[i] & openOverPrevClose[i] > sellThreshold) ? 1 : 0;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,76 @@
+/* Donald W. Strong
+ *
+ *  This class defines a simple moving average over the last 'length' values. Rather than re-summing the window every
+ *  day, it keeps a running sum that adds the newest value and subtracts the one that fell out of the window. The sum
+ *  is compensated (Kahan summation) so that thousands of add/subtract steps do not drift away from the exact window
+ *  total that the old re-summing loop produced.
+ */
+public class SimpleMovingAverage implements Indicator {
+
+    /* Variable declarations */
+    private final RollingWindow window;
+    private double sum;
+    private double compensation;
+
+    public SimpleMovingAverage(int length) {
+        this.window = new RollingWindow(length);
+    }
+
+    public void update(double value) {
+        double evicted = window.push(value);
+        double delta = Double.isNaN(evicted) ? value : value - evicted;
+
+        /* Compensated addition of the change in the window total */
+        double y = delta - compensation;
+        double t = sum + y;
+        compensation = (t - sum) - y;
+        sum = t;
+    }
+
+    public double value() {
+        return sum / window.size();
+    }
+
+    public boolean isReady() {
+        return window.isFull();
+    }
+
+    public int length() {
+        return window.length();
+    }
+
+    public void reset() {
+        window.clear();
+        sum = 0;
+        compensation = 0;
+    }
+
+    /* The values in the window (oldest first), the running sum and its compensation. Together they are the whole
+       state of the average, so it can be saved and later restored exactly (see StrategyCheckpoint).
+     */
+    double[] values() {
+        double[] values = new double[window.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = window.get(i);
+        }
+        return values;
+    }
+
+    double sum() {
+        return sum;
+    }
+
+    double compensation() {
+        return compensation;
+    }
+
+    /* Puts back the state saved from values(), sum() and compensation() */
+    void restore(double[] values, double sum, double compensation) {
+        window.clear();
+        for (double value : values) {
+            window.push(value);
+        }
+        this.sum = sum;
+        this.compensation = compensation;
+    }
+}
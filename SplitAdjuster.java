@@ -0,0 +1,11 @@
+/* Donald W. Strong
+ *
+ *  This interface outlines how the ingestion pipeline in PriceQueries finds the split divisor for each day it reads.
+ *  Days are passed in the order the pricevolume queries return them (most recent first). A SplitDetector works the
+ *  divisor out from the prices as it goes; a SplitIndex looks it up from splits detected earlier.
+ */
+public interface SplitAdjuster {
+
+    /* Takes in the next (older) trading day and its unadjusted prices, returns the divisor that applies to it */
+    double next(int date, double openPrice, double closePrice);
+}
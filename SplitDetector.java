@@ -0,0 +1,85 @@
+/* Donald W. Strong
+ *
+ *  This class detects 2:1, 3:1 and 3:2 stock splits in a price history that is read one day at a time, most recent
+ *  day first (the order returned by the pricevolume queries). Each day's closing price is compared against the next
+ *  day's adjusted opening price; a jump of roughly 2x, 3x or 1.5x is treated as a split and multiplies the divisor
+ *  that is applied to that day and every older day.
+ */
+import java.util.ArrayList;
+import java.util.List;
+
+public class SplitDetector implements SplitAdjuster {
+
+    /* Variable declarations */
+    private double divisor = 1;
+    private double nextOpen = Double.NaN;
+    private final ArrayList<SplitEvent> splits = new ArrayList<SplitEvent>();
+    private int days;
+    private int newestDate;
+    private double newestOpen;
+    private double newestClose;
+
+    /* Feeds the unadjusted prices of the next (older) trading day. Returns the divisor that applies to that day */
+    public double next(int date, double openPrice, double closePrice) {
+        /* Remember the first (most recent) day, it is where a later scan of newer days picks up from */
+        if (days == 0) {
+            newestDate = date;
+            newestOpen = openPrice;
+            newestClose = closePrice;
+        }
+        days++;
+
+        /* If we have seen at least one day, compare against the more recent day's adjusted opening price */
+        if (!Double.isNaN(nextOpen)) {
+            double diff = (closePrice / divisor) / nextOpen;
+
+            /* If we detect a 2:1 stock split */
+            if (Math.abs(diff - 2.0) < 0.20) {
+                split(date, 2, closePrice);
+            }
+            /* If we detect a 3:1 stock split */
+            else if (Math.abs(diff - 3.0) < 0.30) {
+                split(date, 3, closePrice);
+            }
+            /* If we detect a 3:2 stock split */
+            else if (Math.abs(diff - 1.5) < 0.15) {
+                split(date, 1.5, closePrice);
+            }
+        }
+        nextOpen = openPrice / divisor;
+        return divisor;
+    }
+
+    /* Records a split and updates the divisor accordingly */
+    private void split(int date, double ratio, double closePrice) {
+        splits.add(new SplitEvent(date, ratio, closePrice, nextOpen * divisor));
+        divisor *= ratio;
+    }
+
+    public double divisor() {
+        return divisor;
+    }
+
+    /* Number of days fed to the detector so far */
+    public int days() {
+        return days;
+    }
+
+    /* Date and unadjusted prices of the most recent day fed to the detector (only meaningful if days() > 0) */
+    public int newestDate() {
+        return newestDate;
+    }
+
+    public double newestOpen() {
+        return newestOpen;
+    }
+
+    public double newestClose() {
+        return newestClose;
+    }
+
+    /* Splits detected so far, most recent first */
+    public List<SplitEvent> splits() {
+        return splits;
+    }
+}
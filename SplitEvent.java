@@ -0,0 +1,41 @@
+/* Donald W. Strong
+ *
+ *  This class defines a single stock split detected in the price history of a company. A SplitEvent consists of:
+ *      date = the trading day (epoch day) on which the split was detected
+ *      ratio = the split ratio (2 for a 2:1 split, 3 for a 3:1 split, 1.5 for a 3:2 split)
+ *      closePrice = the unadjusted closing price on the day of the split
+ *      nextOpenPrice = the unadjusted opening price on the trading day after the split
+ */
+public class SplitEvent {
+
+    /* Variable declarations */
+    public final int date;
+    public final double ratio;
+    public final double closePrice;
+    public final double nextOpenPrice;
+
+    public SplitEvent(int date, double ratio, double closePrice, double nextOpenPrice) {
+        this.date = date;
+        this.ratio = ratio;
+        this.closePrice = closePrice;
+        this.nextOpenPrice = nextOpenPrice;
+    }
+
+    /* Returns the split ratio in the form printed to the user, i.e. "2:1", "3:1" or "3:2" */
+    public String ratioName() {
+        if (ratio == 2.0) {
+            return "2:1";
+        }
+        else if (ratio == 3.0) {
+            return "3:1";
+        }
+        else {
+            return "3:2";
+        }
+    }
+
+    /* Returns the line printed to the user for this split, e.g. "2:1 split on 2004.08.27 89.01 --> 44.79" */
+    public String toString() {
+        return ratioName() + " split on " + TradeDate.format(date) + " " + closePrice + " --> " + nextOpenPrice;
+    }
+}
@@ -0,0 +1,239 @@
+/* Donald W. Strong
+ *
+ *  This class defines a persisted index of the stock splits of every ticker that has been queried. For each ticker it
+ *  keeps the splits detected over the full price history (date, ratio and the cumulative divisor that applies to
+ *  every day on or before that split) along with the last day that was scanned.
+ *
+ *  With the index, a date range query no longer has to detect splits inside the range. The divisor for any day is
+ *  found by binary search over the split dates, so it matches what a full history query would have applied, and only
+ *  the rows inside the range are fetched. The index is built the first time a ticker is seen and afterwards only the
+ *  days after the last scanned day are checked for new splits.
+ *
+ *  The file (splits.idx by default) is written to a temporary file and moved into place whenever it changes.
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class SplitIndex {
+
+    /* Default location of the index, can be changed with e.g. "splitindex=/data/splits.idx" in the params file */
+    static final String DEFAULT_FILE = "splits.idx";
+
+    private static final int MAGIC = 0x53545849; // "STXI"
+    private static final int VERSION = 1;
+
+    /* The split history of one ticker */
+    public static class TickerSplits implements SplitAdjuster {
+
+        /* Variable declarations */
+        final int lastDate;
+        final double lastOpen;
+        final double lastClose;
+        final List<SplitEvent> splits;
+        private final int[] dates;
+        private final double[] cumulative;
+
+        /* Constructor that takes the splits most recent first, along with the unadjusted prices of the last day that
+           was scanned
+         */
+        TickerSplits(int lastDate, double lastOpen, double lastClose, List<SplitEvent> splits) {
+            this.lastDate = lastDate;
+            this.lastOpen = lastOpen;
+            this.lastClose = lastClose;
+            this.splits = Collections.unmodifiableList(new ArrayList<SplitEvent>(splits));
+
+            /* Store the split dates oldest first. cumulative[i] is the product of the ratios of split i and every
+               later split, i.e. the divisor for days on or before dates[i] */
+            int count = splits.size();
+            dates = new int[count];
+            cumulative = new double[count];
+            double divisor = 1;
+            for (int i = count - 1; i >= 0; i--) {
+                SplitEvent split = splits.get(count - 1 - i);
+                divisor *= split.ratio;
+                dates[i] = split.date;
+                cumulative[i] = divisor;
+            }
+        }
+
+        /* Returns the divisor that applies to the given day */
+        public double divisorOn(int date) {
+            int low = 0;
+            int high = dates.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (dates[mid] < date) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return (low == dates.length) ? 1 : cumulative[low];
+        }
+
+        public double next(int date, double openPrice, double closePrice) {
+            return divisorOn(date);
+        }
+
+        /* Returns the splits detected between two days of a range, i.e. on or after 'firstDate' and before
+           'lastDate', most recent first
+         */
+        public List<SplitEvent> between(int firstDate, int lastDate) {
+            List<SplitEvent> range = new ArrayList<SplitEvent>();
+            for (SplitEvent split : splits) {
+                if (split.date >= firstDate && split.date < lastDate) {
+                    range.add(split);
+                }
+            }
+            return range;
+        }
+
+        /* All splits of the ticker, most recent first */
+        public List<SplitEvent> splits() {
+            return splits;
+        }
+
+        /* Divisor that applies to the split at position i of splits() */
+        double cumulativeDivisor(int i) {
+            return cumulative[cumulative.length - 1 - i];
+        }
+    }
+
+    /* Variable declarations */
+    private final Path file;
+    private final Map<String, TickerSplits> tickers = new LinkedHashMap<String, TickerSplits>();
+    private boolean changed;
+
+    private SplitIndex(Path file) {
+        this.file = file;
+    }
+
+    /* Reads the index stored at 'file', or returns an empty index if there is no such file yet */
+    public static SplitIndex load(Path file) throws IOException {
+        SplitIndex index = new SplitIndex(file);
+        if (!Files.exists(file)) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a split index");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String ticker = in.readUTF();
+                int lastDate = in.readInt();
+                double lastOpen = in.readDouble();
+                double lastClose = in.readDouble();
+                int splitCount = in.readInt();
+                List<SplitEvent> splits = new ArrayList<SplitEvent>(splitCount);
+                for (int j = 0; j < splitCount; j++) {
+                    splits.add(new SplitEvent(in.readInt(), in.readDouble(), in.readDouble(), in.readDouble()));
+                    in.readDouble(); // cumulative divisor, recomputed from the ratios
+                }
+                index.tickers.put(ticker, new TickerSplits(lastDate, lastOpen, lastClose, splits));
+            }
+        }
+        return index;
+    }
+
+    /* Returns the indexed splits for a ticker (case insensitive), or null if the ticker has not been indexed */
+    public synchronized TickerSplits get(String ticker) {
+        return tickers.get(key(ticker));
+    }
+
+    /* Records the splits of a full price history that was just read (e.g. by getPriceVolume). The most recent day
+       of a full history has a divisor of 1, so its adjusted prices are its unadjusted prices.
+     */
+    public synchronized void record(PriceSeries series) {
+        if (series.isEmpty()) {
+            return;
+        }
+        int last = series.size() - 1;
+        tickers.put(key(series.ticker), new TickerSplits(series.date(last), series.open(last), series.close(last),
+                series.splits()));
+        changed = true;
+    }
+
+    /* Method that brings the splits of a ticker up to date and returns them, or returns null if the ticker has no
+       prices. The first time a ticker is seen its full history is scanned. After that only the days after the last
+       scanned day are fetched; if any of them (or the last scanned day itself) turns out to be a split, the new
+       splits are added in front of the ones already indexed.
+     */
+    public synchronized TickerSplits update(PriceQueries queries, String ticker) throws SQLException {
+        TickerSplits known = tickers.get(key(ticker));
+        SplitDetector detector = new SplitDetector();
+        TickerSplits updated;
+
+        if (known == null) {
+            if (queries.splitScan(ticker, PriceQueries.ALL_DATES, detector) == 0) {
+                return null;
+            }
+            updated = new TickerSplits(detector.newestDate(), detector.newestOpen(), detector.newestClose(),
+                    detector.splits());
+        }
+        else {
+            if (queries.splitScan(ticker, known.lastDate, detector) == 0) {
+                return known;
+            }
+
+            /* Carry the detector on to the last scanned day, which may itself be the day of a new split */
+            detector.next(known.lastDate, known.lastOpen, known.lastClose);
+            List<SplitEvent> splits = new ArrayList<SplitEvent>(detector.splits());
+            splits.addAll(known.splits);
+            updated = new TickerSplits(detector.newestDate(), detector.newestOpen(), detector.newestClose(), splits);
+        }
+
+        tickers.put(key(ticker), updated);
+        changed = true;
+        return updated;
+    }
+
+    /* Writes the index back to its file if anything changed since it was loaded or last saved */
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tickers.size());
+            for (Map.Entry<String, TickerSplits> entry : tickers.entrySet()) {
+                TickerSplits splits = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(splits.lastDate);
+                out.writeDouble(splits.lastOpen);
+                out.writeDouble(splits.lastClose);
+                out.writeInt(splits.splits.size());
+                for (int i = 0; i < splits.splits.size(); i++) {
+                    SplitEvent split = splits.splits.get(i);
+                    out.writeInt(split.date);
+                    out.writeDouble(split.ratio);
+                    out.writeDouble(split.closePrice);
+                    out.writeDouble(split.nextOpenPrice);
+                    out.writeDouble(splits.cumulativeDivisor(i));
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    private static String key(String ticker) {
+        return ticker.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,9 +1,9 @@
 
 /* Donald W. Strong
  *
- * This program is intended to be used with the Entry class. Program allows the user to query a database (DB) and return
- * stock related information about a number of companies. The user is prompted by the console to enter a 'ticker' (or
- * abbreviation) for the desired company and optional start and end dates. If the company is found in the DB, the
+ * This program is intended to be used with the PriceSeries class. Program allows the user to query a database (DB) and
+ * return stock related information about a number of companies. The user is prompted by the console to enter a
+ * 'ticker' (or abbreviation) for the desired company and optional start and end dates. If the company is found in the DB, the
  * program will print any stock splits detected throughout the data regarding the company, as well as perform an
  * "investment strategy" analysis and print the number of shares bought/sold and total net cash accrued to the User.
  */
@@ -11,33 +11,188 @@ import java.util.*;
 import java.io.*;
 import java.sql.*;
 import java.lang.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 
 public class StockTrading {
 
-    static Connection conn = null;
+    /* Where company names and prices come from: the database, the local snapshot in offline mode or a flat file
+       export (see PriceDataSource)
+     */
+    static PriceDataSource source = null;
+
+    /* Format and file of the transaction log, e.g. "translog.format=csv" in the params file (see TransactionLog) */
+    static TransactionLog.Format translogFormat = TransactionLog.Format.TEXT;
+    static Path translogFile = Paths.get(translogFormat.defaultFile);
+
+    static final String USAGE = "Usage: java StockTrading [paramsFile] [--batch | --refresh | --offline |" +
+            " --sweep=TICKER | --compare=TICKER | --robust=TICKER | --portfolio[=TICKER,...] |" +
+            " --update[=TICKER,...] | --serve[=PORT]]";
 
     public static void main(String[] args) throws Exception {
         boolean isCompanyPresent;
-        ArrayList<Entry> entryList;
+        PriceSeries series;
+        StrategyParameters params;
 
-        // Get connection properties
+        // Get connection properties and mode (see USAGE)
         String paramsFile = "readerparams.txt";
-        if (args.length >= 1) {
-            paramsFile = args[0];
+        String mode = "";
+        String modeArg = "";
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int equals = arg.indexOf('=');
+                mode = (equals < 0) ? arg : arg.substring(0, equals);
+                modeArg = (equals < 0) ? "" : arg.substring(equals + 1).trim();
+            }
+            else {
+                paramsFile = arg;
+            }
         }
         Properties connectprops = new Properties();
         connectprops.load(new FileInputStream(paramsFile));
 
+        /* Optional strategy parameters, e.g. "window=200" in the params file (see StrategyParameters) */
+        params = StrategyParameters.fromProperties(connectprops);
+        Path snapshotFile = Paths.get(connectprops.getProperty("snapshot", PriceSnapshot.DEFAULT_FILE).trim());
+        translogFormat = TransactionLog.Format.of(connectprops.getProperty("translog.format", "text"));
+        translogFile = Paths.get(connectprops.getProperty("translog.file", translogFormat.defaultFile).trim());
+        String pricesFile = connectprops.getProperty("prices.file");
+
+        /* Timings and counts for each step, over JMX and optionally dumped to a file (see Metrics) */
+        Metrics.start(connectprops);
+
         try {
-            // Get connection
-            Class.forName("com.mysql.jdbc.Driver");
-            String dburl = connectprops.getProperty("dburl");
-            String username = connectprops.getProperty("user");
-            conn = DriverManager.getConnection(dburl, connectprops);
-            System.out.printf("Database connection %s %s established.%n", dburl, username);
+            /* Batch mode runs every ticker in the company table (or flat file) and prints a summary table instead of
+               prompting
+             */
+            if (mode.equals("--batch")) {
+                boolean batchLog = Boolean.parseBoolean(connectprops.getProperty("batch.translog", "false").trim());
+                TransactionLog log = batchLog ? TransactionLog.open(translogFile, translogFormat) : null;
+                try {
+                    if (pricesFile != null) {
+                        source = openFlatFile(connectprops);
+                        BatchBacktest.run(source, params, log);
+                        source.close();
+                    }
+                    else {
+                        loadDriver();
+                        BatchBacktest.run(connectprops, params, log);
+                    }
+                }
+                finally {
+                    if (log != null) {
+                        log.close();
+                        System.out.printf("Transaction log written to %s.%n", translogFile);
+                    }
+                }
+                return;
+            }
+            /* Service mode answers queries over HTTP instead of prompting (see QueryService) */
+            else if (mode.equals("--serve")) {
+                if (pricesFile == null) {
+                    loadDriver();
+                }
+                QueryService.serve(connectprops, params, (pricesFile != null) ? openFlatFile(connectprops) : null,
+                        (modeArg.length() == 0) ? 0 : Integer.parseInt(modeArg));
+                return;
+            }
+            /* Refresh mode brings the local price snapshot up to date with the database */
+            else if (mode.equals("--refresh")) {
+                loadDriver();
+                PriceQueries refreshQueries = new PriceQueries(
+                        DriverManager.getConnection(connectprops.getProperty("dburl"), connectprops));
+                PriceSnapshot.refresh(snapshotFile, refreshQueries);
+                refreshQueries.close();
+                return;
+            }
+            /* Offline mode answers every query from the local price snapshot */
+            else if (mode.equals("--offline")) {
+                source = PriceSnapshot.open(snapshotFile);
+                System.out.printf("Using price snapshot %s.%n", snapshotFile);
+            }
+            else if ((mode.equals("--sweep") || mode.equals("--compare") || mode.equals("--robust")) &&
+                    modeArg.length() == 0) {
+                System.out.println("Missing ticker. " + USAGE);
+                return;
+            }
+            else if (mode.length() > 0 && !mode.equals("--sweep") && !mode.equals("--compare") &&
+                    !mode.equals("--robust") && !mode.equals("--portfolio") && !mode.equals("--update")) {
+                System.out.println("Unknown option " + mode + ". " + USAGE);
+                return;
+            }
+
+            /* A flat file export named by e.g. "prices.file=pricevolume.tsv" in the params file replaces the
+               database
+             */
+            if (source == null && pricesFile != null) {
+                source = openFlatFile(connectprops);
+            }
+
+            if (source == null) {
+                String dburl = connectprops.getProperty("dburl");
+                String username = connectprops.getProperty("user");
+                // Get connection
+                loadDriver();
+                try {
+                    PriceQueries queries = new PriceQueries(DriverManager.getConnection(dburl, connectprops));
+                    System.out.printf("Database connection %s %s established.%n", dburl, username);
+                    source = new JdbcPriceSource(queries, SplitIndex.load(Paths.get(connectprops.getProperty(
+                            "splitindex", SplitIndex.DEFAULT_FILE).trim())));
+                }
+                /* If the database is down but we have a snapshot, keep going with the snapshot */
+                catch (SQLException ex) {
+                    if (!Files.exists(snapshotFile)) {
+                        throw ex;
+                    }
+                    source = PriceSnapshot.open(snapshotFile);
+                    System.out.printf("Database connection %s failed (%s). Using price snapshot %s.%n", dburl,
+                            ex.getMessage(), snapshotFile);
+                }
+            }
+
+            /* Sweep mode runs every combination of strategy parameters over one ticker, compare mode runs a list of
+               strategies over it in one pass (see StrategyEngine) and robust mode runs the strategy over resampled
+               and walk-forward histories of it (see RobustnessEngine), instead of prompting
+             */
+            boolean interactive = mode.length() == 0 || mode.equals("--offline");
+
+            /* Portfolio mode trades every ticker (or the tickers given) from one shared cash balance, writing one
+               transaction log and an equity curve (see PortfolioBacktest)
+             */
+            if (mode.equals("--portfolio")) {
+                TransactionLog log = TransactionLog.open(translogFile, translogFormat);
+                try {
+                    PortfolioBacktest.run(source, listTickers(modeArg), connectprops, params, log);
+                }
+                finally {
+                    log.close();
+                    System.out.printf("Transaction log written to %s.%n", translogFile);
+                }
+            }
+            /* Update mode carries each ticker's strategy on from its checkpoint over the days added since (see
+               StrategyCheckpoint)
+             */
+            else if (mode.equals("--update")) {
+                StrategyCheckpoint.run(source, listTickers(modeArg), connectprops, params);
+            }
+            else if (!interactive) {
+                if (!getCompanyName(modeArg)) {
+                    System.out.println(modeArg + " not found in database.\n");
+                }
+                else if (mode.equals("--sweep")) {
+                    ParameterSweep.run(getPriceVolume(modeArg), connectprops);
+                }
+                else if (mode.equals("--robust")) {
+                    RobustnessEngine.run(getPriceVolume(modeArg), connectprops, params);
+                }
+                else {
+                    StrategyEngine.compare(getPriceVolume(modeArg), connectprops, params);
+                }
+            }
 
-            while (true) {
+            while (interactive) {
 
                 /* Initial prompt for ticker and optional date */
                 Scanner input = new Scanner(System.in);
@@ -66,25 +221,27 @@ public class StockTrading {
                            end dates as parameters
                          */
                         if (userInput.length == 3) {
-                            entryList = getPriceVolume(userInput[0], userInput[1], userInput[2]);
+                            series = getPriceVolume(userInput[0], userInput[1], userInput[2]);
                         }
                         /* If user does not specify dates, call the default version of getPriceVolume that only needs a
                            ticker
                          */
                         else {
-                            entryList = getPriceVolume(userInput[0]);
+                            series = getPriceVolume(userInput[0]);
                         }
 
-                        /* Call method to perform an investment strategy analysis on the list returned by getPriceVolume
+                        /* Call method to perform an investment strategy analysis on the series returned by getPriceVolume
                          */
-                        getTradingInfo(entryList);
+                        getTradingInfo(series, params);
                     }
                 }
 
             }
-            /* Close DB connection and terminate the program once the User is finished */
-            conn.close();
-            System.out.println("Database connection closed");
+            /* Close DB connection (or file) and terminate the program once the User is finished */
+            source.close();
+            if (source instanceof JdbcPriceSource) {
+                System.out.println("Database connection closed");
+            }
         }
         catch (SQLException ex) {
             System.out.printf("SQLException: %s%nSQLState: %s%nVendorError: %s%n",
@@ -92,223 +249,129 @@ public class StockTrading {
         }
     }
 
+    /* Loads the MySQL driver. Only the modes that connect to the database call this, so the flat file and snapshot
+       modes run without the connector jar on the class path.
+     */
+    private static void loadDriver() throws ClassNotFoundException {
+        Class.forName("com.mysql.jdbc.Driver");
+    }
+
     /* Method that takes in a ticker from the user and prints the name of the company to the console. This method
-       returns an int that describes whether or not the query returns any results. If the company name is found in the
-       DB, returns 0. Otherwise, returns -1 and prints an error to the user.
+       returns a boolean that describes whether or not the query returns any results. If the company name is found in
+       the DB, returns true. Otherwise, returns false.
      */
     static boolean getCompanyName(String ticker) throws SQLException {
-        Statement stmnt = conn.createStatement();
-        ResultSet results = stmnt.executeQuery("select distinct Name from company " +
-                "where Ticker = '" + ticker + "'");
-        /* Returns a negative one if we don't retrieve any results */
-        if (!results.isBeforeFirst()) {
-            stmnt.close();
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        List<String> names = source.companyNames(ticker);
+        Metrics.record(Metrics.Phase.COMPANY_NAME, started, allocated);
+        /* Returns false if we don't retrieve any results */
+        if (names.isEmpty()) {
             return false;
         }
-        /* Prints the name of the company associated with ticker to the console and returns 0 */
+        /* Prints the name of the company associated with ticker to the console and returns true */
         else {
-            while (results.next()) {
-                System.out.println(results.getString("Name"));
+            for (String name : names) {
+                System.out.println(name);
             }
-            stmnt.close();
             return true;
         }
     }
 
     /* Method that takes in a ticker specified by the user and calculates/identifies any stock splits that occur for
-       all entries for that company in the DB. Method returns an ArrayList of Entry objects that consists of the results
-       returned from the query. While generating the list, this method will detect either a 2:1, 3:1, or 3:2 stock split
-       and adjust all subsequent price data with the appropriate divisor.
+       all entries for that company in the DB. Method returns a PriceSeries (in chronological order) that consists of
+       the results returned from the query. While generating the series, this method will detect either a 2:1, 3:1, or
+       3:2 stock split and adjust all subsequent price data with the appropriate divisor.
     */
-    static ArrayList<Entry> getPriceVolume(String ticker) throws SQLException {
-        ArrayList<Entry> list = new ArrayList<Entry>();
-        double divisor = 1;
-        Statement stmnt = conn.createStatement();
-        double diff;
-        Entry prev;
-        int last = 0; //initial value for size of list. Workaround to avoid using size()-1 each iteration
-        int numberOfStockSplits = 0;
-
-        ResultSet results = stmnt.executeQuery("select TransDate, OpenPrice, HighPrice, LowPrice, ClosePrice" +
-                " from pricevolume where Ticker = '" + ticker + "' order by TransDate DESC");
-
-        /* Another check to ensure the ticker is found in the DB */
-        if (!results.isBeforeFirst()) {
-            System.out.println(ticker + " not found in database\n");
-        }
-
-        /* If we have results from the query... */
-        else {
-            /* Create Entry object and add first entry to ArrayList */
-            while (results.next()) {
-
-                /* If list has at least one element, grab most recent entry to compare for stockSplit calculations */
-                if (!list.isEmpty()) {
-                    prev = list.get(last);
-                    diff = (Double.parseDouble(results.getString(5).trim()) / divisor) / prev.openingPrice;
-
-
-                    /* If we detect a stock split, update the divisor accordingly */
-                    /* If we detect a 2 to 1 stock split */
-                    if (Math.abs(diff - 2.0) < 0.20) {
-                        System.out.println("2:1 split on " + results.getString(1) + " " +
-                                Double.parseDouble(results.getString(5).trim()) + " --> " + (prev.openingPrice * divisor));
-                        divisor *= 2;
-                        numberOfStockSplits++;
-
-                    }
-                    /* If we detect a 3 to 1 stock split */
-                    else if (Math.abs(diff - 3.0) < 0.30) {
-                        System.out.println("3:1 split on " + results.getString(1) + " " +
-                                Double.parseDouble(results.getString(5).trim()) + " --> " + (prev.openingPrice * divisor));
-                        divisor *= 3;
-                        numberOfStockSplits++;
-
-                    }
-                    /* If we detect a 3 to 2 stock split */
-                    else if (Math.abs(diff - 1.5) < 0.15) {
-                        System.out.println("3:2 split on " + results.getString(1) + " " +
-                                Double.parseDouble(results.getString(5).trim()) + " --> " + (prev.openingPrice * divisor));
-                        divisor *= 1.5;
-                        numberOfStockSplits++;
-                    }
+    static PriceSeries getPriceVolume(String ticker) throws SQLException {
+        PriceSeries series = source.priceVolume(ticker);
+        printSplits(series);
+        return series;
+    }
 
-                    /* Create entry object with most recent divisor */
-                    Entry currEntry = new Entry(ticker, results.getString(1),
-                            Double.parseDouble(results.getString(2).trim()) / divisor,
-                            Double.parseDouble(results.getString(3).trim()) / divisor,
-                            Double.parseDouble(results.getString(4).trim()) / divisor,
-                            Double.parseDouble(results.getString(5).trim()) / divisor);
+    /* Method that takes in a ticker and start and end dates specified by the user to be used in the query. Method
+       returns a PriceSeries (in chronological order) that consists of the results returned from the query. The 2:1,
+       3:1, and 3:2 stock splits for the company come from the split index (see SplitIndex), so each day is adjusted
+       with the same divisor a query over the full history would give it, and only the splits inside the range are
+       printed.
+     */
+    static PriceSeries getPriceVolume(String ticker, String beginningDate, String endDate) throws SQLException {
+        PriceSeries series = source.priceVolume(ticker, beginningDate, endDate);
+        printSplits(series);
+        return series;
+    }
 
-                    list.add(currEntry);
-                    last++;
-                }
-                /* It's the first entry... */
-                else {
-                    Entry currEntry = new Entry(ticker, results.getString(1),
-                            Double.parseDouble(results.getString(2).trim()) / divisor,
-                            Double.parseDouble(results.getString(3).trim()) / divisor,
-                            Double.parseDouble(results.getString(4).trim()) / divisor,
-                            Double.parseDouble(results.getString(5).trim()) / divisor);
-                    list.add(currEntry);
-                }
-            }
-            System.out.println(numberOfStockSplits + " splits in " + (++last) + " trading days\n");
+    /* Method that returns the comma separated tickers given with a mode, or every company if none were given */
+    private static List<String> listTickers(String modeArg) throws SQLException {
+        if (modeArg.length() == 0) {
+            return new ArrayList<String>(source.companies().keySet());
         }
-        return list;
+        return Arrays.asList(modeArg.split("\\s*,\\s*"));
     }
 
-    /* Method that takes in a ticker and start and end dates specified by the user to be used in the query. Method
-       calculates/identifies any stock splits that occur for all entries for that company in the DB. Method returns an
-       ArrayList of Entry objects that consists of the results returned from the query. While generating the list,
-       this method will detect either a 2:1, 3:1, or 3:2 stock split and adjust all subsequent price data with the
-       appropriate divisor.
+    /* Method that opens the flat file named by "prices.file" in the params file, along with the optional file of
+       company names named by "companies.file" (see FlatFilePriceSource)
      */
-    static ArrayList<Entry> getPriceVolume(String ticker, String beginningDate, String endDate) throws SQLException {
-        ArrayList<Entry> list = new ArrayList<Entry>();
-        double divisor = 1;
-        Statement stmnt = conn.createStatement();
-        double diff;
-        Entry prev;
-        int last = 0; //initial value for size of list. Workaround to avoid using size()-1 each iteration
-        int numberOfStockSplits = 0;
-
-
-        ResultSet results = stmnt.executeQuery("select TransDate, OpenPrice, HighPrice, LowPrice, ClosePrice" +
-                " from pricevolume where Ticker = '" + ticker + "' and TransDate >= '" + beginningDate +
-                "'  and TransDate <= '" + endDate + "' order by TransDate DESC");
-
-        /* If we didn't return any results from the query */
-        if (!results.isBeforeFirst()) {
-            System.out.println(ticker + " not found in database\n");
+    private static PriceDataSource openFlatFile(Properties connectprops) throws IOException {
+        String companiesFile = connectprops.getProperty("companies.file");
+        return FlatFilePriceSource.open(Paths.get(connectprops.getProperty("prices.file").trim()),
+                (companiesFile == null) ? null : Paths.get(companiesFile.trim()));
+    }
+
+    /* Method that prints the stock splits found in a series followed by the number of trading days, or an error if
+       the query did not return any results.
+     */
+    private static void printSplits(PriceSeries series) {
+        if (series.isEmpty()) {
+            System.out.println(series.ticker + " not found in database\n");
         }
-        /* If we have results from the query */
         else {
-            /* Create Entry object and add first entry to ArrayList */
-            while (results.next()) {
-
-                /* If list has at least one element, grab most recent entry to compare for stockSplit calculations */
-                if (!list.isEmpty()) {
-                    prev = list.get(last);
-                    diff = (Double.parseDouble(results.getString(5).trim()) / divisor) / prev.openingPrice;
-
-
-                    /* If we detect a stock split, update the divisor accordingly */
-                    /* If we detect a 2:1 stock split */
-                    if (Math.abs(diff - 2.0) < 0.20) {
-                        System.out.println("2:1 split on " + results.getString(1) + " " +
-                                Double.parseDouble(results.getString(5).trim()) + " --> " + (prev.openingPrice * divisor));
-                        divisor *= 2;
-                        numberOfStockSplits++;
+            for (SplitEvent split : series.splits()) {
+                System.out.println(split);
+            }
+            System.out.println(series.splits().size() + " splits in " + series.size() + " trading days\n");
+        }
+    }
 
-                    }
-                    /* If we detect a 3:1 stock split */
-                    else if (Math.abs(diff - 3.0) < 0.30) {
-                        System.out.println("3:1 split on " + results.getString(1) + " " +
-                                Double.parseDouble(results.getString(5).trim()) + " --> " + (prev.openingPrice * divisor));
-                        divisor *= 3;
-                        numberOfStockSplits++;
+    /* Method that takes in a PriceSeries (output from getPriceVolume) and performs an "investment strategy" analysis on
+       the series using the default 50 day rolling average of closing prices.
+     */
+    public static void getTradingInfo(PriceSeries series)throws FileNotFoundException, UnsupportedEncodingException, IOException {
+        getTradingInfo(series, StrategyParameters.DEFAULT);
+    }
 
-                    }
-                    /* If we detect a 3:2 stock split */
-                    else if (Math.abs(diff - 1.5) < 0.15) {
-                        System.out.println("3:2 split on " + results.getString(1) + " " +
-                                Double.parseDouble(results.getString(5).trim()) + " --> " + (prev.openingPrice * divisor));
-                        divisor *= 1.5;
-                        numberOfStockSplits++;
-                    }
+    /* Same as above, but with a rolling average over the given number of trading days */
+    public static void getTradingInfo(PriceSeries series, int window) throws FileNotFoundException,
+            UnsupportedEncodingException, IOException {
+        getTradingInfo(series, StrategyParameters.DEFAULT.withWindow(window));
+    }
 
-                    /* Create entry object with most recent divisor */
-                    Entry currEntry = new Entry(ticker, results.getString(1),
-                            Double.parseDouble(results.getString(2).trim()) / divisor,
-                            Double.parseDouble(results.getString(3).trim()) / divisor,
-                            Double.parseDouble(results.getString(4).trim()) / divisor,
-                            Double.parseDouble(results.getString(5).trim()) / divisor);
+    /* Same as above, but with the given strategy parameters */
+    public static void getTradingInfo(PriceSeries series, StrategyParameters params) throws FileNotFoundException,
+            UnsupportedEncodingException, IOException {
+        getTradingInfo(series, new SimpleMovingAverage(params.window), params);
+    }
 
-                    list.add(currEntry);
-                    last++;
-                }
-                /* It's the first entry... */
-                else {
-                    Entry currEntry = new Entry(ticker, results.getString(1),
-                            Double.parseDouble(results.getString(2).trim()) / divisor,
-                            Double.parseDouble(results.getString(3).trim()) / divisor,
-                            Double.parseDouble(results.getString(4).trim()) / divisor,
-                            Double.parseDouble(results.getString(5).trim()) / divisor);
-                    list.add(currEntry);
-                }
-            }
-            System.out.println(numberOfStockSplits + " splits in " + (++last) + " trading days\n");
-        }
-        return list;
+    /* Same as above, but with the default strategy parameters and the given average indicator */
+    public static void getTradingInfo(PriceSeries series, Indicator average) throws FileNotFoundException,
+            UnsupportedEncodingException, IOException {
+        getTradingInfo(series, average, StrategyParameters.DEFAULT);
     }
 
-    /* Method that takes in an ArrayList of Entry objects (output from getPriceVolume) and performs an "investment
-       strategy" analysis on the list. This method iterates through the list and establishes/maintains a rolling average
-       of closing prices for the previous 50 trading days. If certain critera are met for the current day, the method
-       will either purchase or sell stock shares for that day. Once finished iterating through the list, the method will
-       further liquidate any remaining shares. Finally, method prints the total number of transactions as well as net
-       cash accrued to the user
+    /* Method that takes in a PriceSeries (output from getPriceVolume) and performs an "investment strategy" analysis on
+       the series. The user is asked whether a transaction log should be written, the strategy is run (see runStrategy)
+       and the method prints the total number of transactions as well as net cash accrued to the user
      */
-    public static void getTradingInfo(ArrayList<Entry> list)throws FileNotFoundException, UnsupportedEncodingException, IOException {
-        Collections.reverse(list);
-        int size = list.size();
-        int curr = 50;
-        Entry currEntry = list.get(0);
-        int fiftyDaysPrior = 0;
-        double avgClosePrice = currEntry.closePrice;
-        double cash = 0;
-        int transCount = 0;
-        int numOfShares = 0;
+    public static void getTradingInfo(PriceSeries series, Indicator average, StrategyParameters params)
+            throws FileNotFoundException, UnsupportedEncodingException, IOException {
         DecimalFormat df = new DecimalFormat("#.##");
         Scanner input = new Scanner(System.in);
         String userInput = "";
-        PrintWriter writer = new PrintWriter("translog.txt", "UTF-8");
-        
-        boolean transLog = false;
+        TransactionLog log = null;
 
-        /* If the query gave us more than 51 results, we can generate a rolling average for closing prices */
-        if (size > 51) {
+        /* If the query gave us more results than the window (plus a day to trade on), we can generate a rolling
+           average for closing prices */
+        if (series.size() > average.length() + 1) {
 
             System.out.println("Would you like to see the transaction log for the investment strategy (y/n)?");
             userInput = input.nextLine();
@@ -319,80 +382,128 @@ public class StockTrading {
             userInput = input.nextLine();
             }
             
-            // set translog flag
+            // open the transaction log only if the user asked for it
             if (userInput.equalsIgnoreCase("y")) {
-               transLog = true;
-               System.out.println("Writing investment strategy transaction log to translog.txt...");
-               writer.println("Ticker: " + list.get(0).ticker);
+               log = TransactionLog.open(translogFile, translogFormat);
+               log.ticker(series.ticker);
+               System.out.println("Writing investment strategy transaction log to " + translogFile + "...");
             }
-            
-            /* Loop through until we reach the last trading day */
-            while (curr < size - 1) {
-
-                /* Today's entry */
-                currEntry = list.get(curr);
 
-                /* Find the rolling average from past 50 days */
-                avgClosePrice = 0;
-                for (int i = fiftyDaysPrior; i < curr; i++) {
-                    avgClosePrice += list.get(i).closePrice;
-                }
-                avgClosePrice /= 50;
-
-                /* Buying criteria - if today's closing price is less than the average closing price AND  today's closing
-                *  price is less than 3% of today's opening price.*/
-                if (currEntry.closePrice < avgClosePrice && (currEntry.closePrice/currEntry.openingPrice < 0.97000001))
-                {
-                    transCount++;
-                    numOfShares += 100;
-                    cash -= (100 * list.get(curr+1).openingPrice);
-                    cash -= 8;
-                    if (transLog) {
-                         writer.printf("Buy: %s 100 shares @ %.7f, total shares = %d, cash = %.7f%n",
-                         list.get(curr+1).date, list.get(curr+1).openingPrice, numOfShares, cash);
-                         writer.flush();
-                      }
-                }
-                /* Selling criteria - if we have shares to sell AND today's opening price is greater than the average
-                   closing price AND today's opening price exceeds yesterdays closing price by 1% or more.
-                 */
-                else if (numOfShares >= 100 && currEntry.openingPrice > avgClosePrice && (currEntry.openingPrice /
-                        list.get(curr-1).closePrice) > 1.00999999) {
-                    double todaysAvgPrice = (currEntry.openingPrice + currEntry.closePrice) / 2;
-                    transCount++;
-                    numOfShares -= 100;
-                    cash += (100 * todaysAvgPrice);
-                    cash -= 8;
-                    if (transLog) {
-                        writer.printf("Sell: %s 100 shares @ %.7f, total shares = %d, cash = %.7f%n",
-                        currEntry.date, todaysAvgPrice, numOfShares, cash);
-                        writer.flush();
-                    }
+            TradingResult result;
+            try {
+                result = runStrategy(series, average, params, log);
+            }
+            finally {
+                if (log != null) {
+                    log.close();
                 }
-
-                curr++;
-                fiftyDaysPrior++;
             }
 
-            /* If we have any remaining shares on the last trading day, liquidate */
-            if (numOfShares > 0) {
-                cash += (list.get(curr).openingPrice * numOfShares);
+            /* Print out the results after all trading is finished for the company */
+            System.out.println("Executing investment strategy");
+            System.out.println("Transactions executed: " + result.transCount);
+            System.out.println("Net cash: " + df.format(result.cash) + "\n");
+
+        }
+
+    }
+
+    /* Method that runs the "investment strategy" over a PriceSeries. This method iterates through the series (oldest
+       day first) and feeds each closing price into the given average indicator, which maintains a rolling average of
+       closing prices for the previous trading days. If certain critera are met for the current day, the method will
+       either purchase or sell stock shares for that day. Once finished iterating through the series, the method will
+       further liquidate any remaining shares. The thresholds, lot size and commission come from 'params' (the window
+       is the length of the indicator). Each transaction is logged to 'log' unless it is null. Nothing is printed to
+       the console, so several series can be run at once (each with its own indicator). The run is timed and its
+       trades counted once it is over (see Metrics).
+     */
+    static TradingResult runStrategy(PriceSeries series, Indicator average, StrategyParameters params,
+                                     TransactionLog log) {
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        TradingResult result = trade(series, average, params, log);
+        Metrics.record(Metrics.Phase.STRATEGY, started, allocated);
+        Metrics.TRADES.add(result.transCount);
+        return result;
+    }
+
+    /* The strategy itself (see runStrategy) */
+    private static TradingResult trade(PriceSeries series, Indicator average, StrategyParameters params,
+                                       TransactionLog log) {
+        int size = series.size();
+        int window = average.length();
+        int curr = window;
+        int today = 0;
+        double avgClosePrice = (size > 0) ? series.close(0) : 0;
+        double cash = 0;
+        int transCount = 0;
+        int numOfShares = 0;
+        int lot = params.lotSize;
+        boolean transLog = (log != null);
+
+        /* If the series has more days than the window (plus a day to trade on), we can generate a rolling average */
+        if (size <= window + 1) {
+            return new TradingResult(false, 0, 0);
+        }
+
+        /* Prime the average with the closing prices of the first 'window' trading days */
+        average.reset();
+        for (int i = 0; i < window; i++) {
+            average.update(series.close(i));
+        }
+
+        /* Loop through until we reach the last trading day */
+        while (curr < size - 1) {
+
+            /* Today's trading day */
+            today = curr;
+
+            /* Rolling average of the closing prices for the previous 'window' days */
+            avgClosePrice = average.value();
+
+            /* Buying criteria - if today's closing price is less than the average closing price AND  today's closing
+            *  price is less than 3% (by default) of today's opening price.*/
+            if (series.close(today) < avgClosePrice &&
+                    (series.close(today)/series.open(today) < params.buyThreshold))
+            {
                 transCount++;
+                numOfShares += lot;
+                cash -= (lot * series.open(curr+1));
+                cash -= params.commission;
                 if (transLog) {
-                     writer.printf("Final sale: %s %d shares @ %.7f, cash = %.7f (average = %.7f)%n",
-                     currEntry.date, numOfShares, currEntry.openingPrice, cash, avgClosePrice);
-                     writer.flush();
+                    log.buy(series.ticker, series.date(curr+1), lot, series.open(curr+1), numOfShares, cash);
+                }
+            }
+            /* Selling criteria - if we have shares to sell AND today's opening price is greater than the average
+               closing price AND today's opening price exceeds yesterdays closing price by 1% (by default) or more.
+             */
+            else if (numOfShares >= lot && series.open(today) > avgClosePrice && (series.open(today) /
+                    series.close(curr-1)) > params.sellThreshold) {
+                double todaysAvgPrice = (series.open(today) + series.close(today)) / 2;
+                transCount++;
+                numOfShares -= lot;
+                cash += (lot * todaysAvgPrice);
+                cash -= params.commission;
+                if (transLog) {
+                    log.sell(series.ticker, series.date(today), lot, todaysAvgPrice, numOfShares, cash);
                 }
             }
 
-            /* Print out the results after all trading is finished for the company */
-            System.out.println("Executing investment strategy");
-            System.out.println("Transactions executed: " + transCount);
-            System.out.println("Net cash: " + df.format(cash) + "\n");
+            /* Slide the window forward to include today's closing price */
+            average.update(series.close(today));
+            curr++;
+        }
 
+        /* If we have any remaining shares on the last trading day, liquidate */
+        if (numOfShares > 0) {
+            cash += (series.open(curr) * numOfShares);
+            transCount++;
+            if (transLog) {
+                log.finalSale(series.ticker, series.date(today), numOfShares, series.open(today), cash,
+                        avgClosePrice);
+            }
         }
 
+        return new TradingResult(true, transCount, cash);
     }
 }
-
-
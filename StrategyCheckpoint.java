@@ -0,0 +1,345 @@
+/* Donald W. Strong
+ *
+ *  This class keeps the investment strategy of every ticker running from one day to the next without replaying its
+ *  history. For each ticker it checkpoints the whole state of the strategy as of the last day that was processed:
+ *      - the strategy parameters the state was built with
+ *      - the rolling window of closing prices (with its running sum, see SimpleMovingAverage)
+ *      - cash, shares held and the number of transactions
+ *      - the last day's date and prices, which the next day's rules need, along with the previous day's close
+ *  Prices in the state are in the scale of the last processed day (a divisor of 1), so no separate split divisor
+ *  has to be kept.
+ *
+ *  update() asks the price source for the days from the last processed day on. Only the new days are read from the
+ *  database (see SplitIndex), and the strategy is stepped through them, so the work is proportional to the new data.
+ *  If a split is detected between the last processed day and the new days, the state is first moved to the new scale:
+ *  the prices in the window are divided by the split ratio, and the shares held are multiplied by it, as a broker
+ *  would (a fraction of a share is paid out in cash at the last close). A ticker that has no checkpoint yet, was
+ *  checkpointed with other strategy parameters or whose last processed day no longer matches the database is rebuilt
+ *  from its full history. Without new splits, the state always gives the same result as runStrategy over the whole
+ *  history.
+ *
+ *  The checkpoints of all tickers are kept in one file (strategy.checkpoint by default), written to a temporary file
+ *  and moved into place.
+ */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+public class StrategyCheckpoint {
+
+    /* Default location of the checkpoints, can be changed with e.g. "checkpoint=/data/strategy.checkpoint" in the
+       params file
+     */
+    static final String DEFAULT_FILE = "strategy.checkpoint";
+
+    private static final int MAGIC = 0x5354434b; // "STCK"
+    private static final int VERSION = 1;
+
+    /* Far enough in the future to ask the price source for every day after a date */
+    private static final String LAST_DATE = "9999.12.31";
+
+    /* The strategy state of one ticker. next() feeds it one day at a time, oldest first. A day's rules are only
+       applied once the following day is known, since a purchase is made at the following day's open, so the last
+       day fed in is always still pending, as it is at the end of runStrategy.
+     */
+    public static class TickerState {
+
+        /* Variable declarations */
+        final String ticker;
+        final StrategyParameters params;
+        final SimpleMovingAverage average;
+        int days;
+        int lastDate;
+        double lastOpen;
+        double lastClose;
+        double prevClose;
+        double cash;
+        int shares;
+        int transCount;
+
+        TickerState(String ticker, StrategyParameters params) {
+            this.ticker = ticker;
+            this.params = params;
+            this.average = new SimpleMovingAverage(params.window);
+        }
+
+        /* Feeds the split adjusted prices of the next trading day */
+        void next(int date, double openPrice, double closePrice) {
+            if (days > 0) {
+                /* The pending day is the day the rules look at, once the average holds 'window' closing prices */
+                if (days - 1 >= params.window) {
+                    trade(openPrice);
+                }
+                average.update(lastClose);
+                prevClose = lastClose;
+            }
+            lastDate = date;
+            lastOpen = openPrice;
+            lastClose = closePrice;
+            days++;
+        }
+
+        /* The rules of runStrategy for the pending day, buying at 'nextOpen' */
+        private void trade(double nextOpen) {
+            int lot = params.lotSize;
+            double avgClosePrice = average.value();
+            if (lastClose < avgClosePrice && lastClose / lastOpen < params.buyThreshold) {
+                transCount++;
+                shares += lot;
+                cash -= (lot * nextOpen);
+                cash -= params.commission;
+            }
+            else if (shares >= lot && lastOpen > avgClosePrice && lastOpen / prevClose > params.sellThreshold) {
+                double todaysAvgPrice = (lastOpen + lastClose) / 2;
+                transCount++;
+                shares -= lot;
+                cash += (lot * todaysAvgPrice);
+                cash -= params.commission;
+            }
+        }
+
+        /* Moves the state to the scale of the days after a split (or several, with the given combined ratio) that
+           came after the last processed day
+         */
+        void split(double ratio) {
+            double[] values = average.values();
+            for (int i = 0; i < values.length; i++) {
+                values[i] /= ratio;
+            }
+            average.restore(values, average.sum() / ratio, average.compensation() / ratio);
+            lastOpen /= ratio;
+            lastClose /= ratio;
+            prevClose /= ratio;
+
+            double held = shares * ratio;
+            shares = (int) Math.floor(held + 1e-9);
+            cash += Math.max(held - shares, 0) * lastClose;
+        }
+
+        /* The result runStrategy would give if the history ended with the last processed day: whatever is still
+           held is sold at that day's open
+         */
+        public TradingResult result() {
+            if (days <= params.window + 1) {
+                return new TradingResult(false, 0, 0);
+            }
+            if (shares > 0) {
+                return new TradingResult(true, transCount + 1, cash + lastOpen * shares);
+            }
+            return new TradingResult(true, transCount, cash);
+        }
+
+        public int shares() {
+            return shares;
+        }
+
+        public int lastDate() {
+            return lastDate;
+        }
+    }
+
+    /* What one update did to a ticker */
+    public static class Update {
+        public final TickerState state;
+        public final int newDays;
+        public final double splitRatio;
+        public final boolean rebuilt;
+
+        Update(TickerState state, int newDays, double splitRatio, boolean rebuilt) {
+            this.state = state;
+            this.newDays = newDays;
+            this.splitRatio = splitRatio;
+            this.rebuilt = rebuilt;
+        }
+    }
+
+    /* Variable declarations */
+    private final Path file;
+    private final Map<String, TickerState> tickers = new LinkedHashMap<String, TickerState>();
+    private boolean changed;
+
+    private StrategyCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /* Reads the checkpoints stored at 'file', or returns an empty set of checkpoints if there is no such file yet */
+    public static StrategyCheckpoint load(Path file) throws IOException {
+        StrategyCheckpoint checkpoint = new StrategyCheckpoint(file);
+        if (!Files.exists(file)) {
+            return checkpoint;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a strategy checkpoint");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String ticker = in.readUTF();
+                StrategyParameters params = new StrategyParameters(in.readInt(), in.readDouble(), in.readDouble(),
+                        in.readInt(), in.readDouble());
+                TickerState state = new TickerState(ticker, params);
+                state.days = in.readInt();
+                state.lastDate = in.readInt();
+                state.lastOpen = in.readDouble();
+                state.lastClose = in.readDouble();
+                state.prevClose = in.readDouble();
+                state.cash = in.readDouble();
+                state.shares = in.readInt();
+                state.transCount = in.readInt();
+                double sum = in.readDouble();
+                double compensation = in.readDouble();
+                double[] values = new double[in.readInt()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = in.readDouble();
+                }
+                state.average.restore(values, sum, compensation);
+                checkpoint.tickers.put(key(ticker), state);
+            }
+        }
+        return checkpoint;
+    }
+
+    /* Returns the checkpointed state of a ticker (case insensitive), or null if it has none */
+    public TickerState get(String ticker) {
+        return tickers.get(key(ticker));
+    }
+
+    /* Method that brings the strategy state of a ticker up to date with 'source' and returns what was done, or
+       returns null if the ticker has no prices
+     */
+    public Update update(PriceDataSource source, String ticker, StrategyParameters params) throws SQLException {
+        TickerState known = tickers.get(key(ticker));
+        if (known != null && sameParameters(known.params, params)) {
+            PriceSeries series = source.priceVolume(ticker, TradeDate.format(known.lastDate), LAST_DATE);
+
+            /* The first day is the last processed day, now divided by the ratio of every split that came after it */
+            if (!series.isEmpty() && series.date(0) == known.lastDate) {
+                double ratio = 1;
+                for (SplitEvent split : series.splits()) {
+                    ratio *= split.ratio;
+                }
+                if (Math.abs(series.open(0) * ratio - known.lastOpen) <= 1e-6 * Math.abs(known.lastOpen) &&
+                        Math.abs(series.close(0) * ratio - known.lastClose) <= 1e-6 * Math.abs(known.lastClose)) {
+                    if (series.size() == 1) {
+                        return new Update(known, 0, 1, false);
+                    }
+                    if (ratio != 1) {
+                        known.split(ratio);
+                    }
+                    for (int i = 1; i < series.size(); i++) {
+                        known.next(series.date(i), series.open(i), series.close(i));
+                    }
+                    changed = true;
+                    return new Update(known, series.size() - 1, ratio, false);
+                }
+            }
+        }
+
+        /* No usable checkpoint, so replay the full history */
+        PriceSeries history = source.priceVolume(ticker);
+        if (history.isEmpty()) {
+            return null;
+        }
+        TickerState state = new TickerState(ticker, params);
+        for (int i = 0; i < history.size(); i++) {
+            state.next(history.date(i), history.open(i), history.close(i));
+        }
+        tickers.put(key(ticker), state);
+        changed = true;
+        return new Update(state, history.size(), 1, true);
+    }
+
+    /* Writes the checkpoints back to their file if anything changed since they were loaded or last saved */
+    public void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tickers.size());
+            for (TickerState state : tickers.values()) {
+                out.writeUTF(state.ticker);
+                out.writeInt(state.params.window);
+                out.writeDouble(state.params.buyThreshold);
+                out.writeDouble(state.params.sellThreshold);
+                out.writeInt(state.params.lotSize);
+                out.writeDouble(state.params.commission);
+                out.writeInt(state.days);
+                out.writeInt(state.lastDate);
+                out.writeDouble(state.lastOpen);
+                out.writeDouble(state.lastClose);
+                out.writeDouble(state.prevClose);
+                out.writeDouble(state.cash);
+                out.writeInt(state.shares);
+                out.writeInt(state.transCount);
+                out.writeDouble(state.average.sum());
+                out.writeDouble(state.average.compensation());
+                double[] values = state.average.values();
+                out.writeInt(values.length);
+                for (double value : values) {
+                    out.writeDouble(value);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    /* Method that brings the checkpoint named in the params file up to date for 'tickers', prints what changed for
+       each of them and saves the checkpoint
+     */
+    public static void run(PriceDataSource source, List<String> tickers, Properties props, StrategyParameters params)
+            throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        Path checkpointFile = Paths.get(props.getProperty("checkpoint", DEFAULT_FILE).trim());
+        StrategyCheckpoint checkpoint = load(checkpointFile);
+        System.out.printf("Updating the strategy for %d tickers from %s...%n", tickers.size(), checkpointFile);
+
+        DecimalFormat df = new DecimalFormat("#.##");
+        int newDays = 0;
+        System.out.printf("%-8s %10s %9s %7s %13s %7s %14s%n", "Ticker", "Last day", "New days", "Split",
+                "Transactions", "Shares", "Net cash");
+        for (String ticker : tickers) {
+            Update update = checkpoint.update(source, ticker, params);
+            if (update == null) {
+                System.out.printf("%-8s no prices%n", ticker);
+                continue;
+            }
+            newDays += update.newDays;
+            TickerState state = update.state;
+            TradingResult result = state.result();
+            String days = update.rebuilt ? "rebuilt" : String.valueOf(update.newDays);
+            String split = (update.splitRatio == 1) ? "-" : df.format(update.splitRatio) + ":1";
+            System.out.printf("%-8s %10s %9s %7s %13s %7d %14s%n", ticker, TradeDate.format(state.lastDate), days,
+                    split, result.executed ? String.valueOf(result.transCount) : "-", state.shares,
+                    result.executed ? df.format(result.cash) : "-");
+        }
+        checkpoint.save();
+        System.out.printf("Checkpoint %s updated: %d tickers, %d trading days read (%d ms)%n%n", checkpointFile,
+                tickers.size(), newDays, (System.nanoTime() - startTime) / 1000000);
+    }
+
+    private static boolean sameParameters(StrategyParameters a, StrategyParameters b) {
+        return a.window == b.window && a.buyThreshold == b.buyThreshold && a.sellThreshold == b.sellThreshold &&
+                a.lotSize == b.lotSize && a.commission == b.commission;
+    }
+
+    private static String key(String ticker) {
+        return ticker.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,309 @@
+/* Donald W. Strong
+ *
+ *  This class runs several variants of the investment strategy from StockTrading over one PriceSeries together.
+ *  Strategies are registered with add() and run() evaluates them all:
+ *      - every distinct indicator is updated once per day, no matter how many strategies read it (strategies added
+ *        with the same window share one simple moving average, and strategies given the same Indicator object share
+ *        that indicator); the strategies reading one indicator are evaluated in a single pass over the days
+ *      - the ratios the rules compare against (close / open and open / previous close) are computed once per day
+ *        for all of them
+ *      - on most days not even the most lenient thresholds of a group are met, so the whole group is passed over
+ *        with two comparisons, and within a group the strategies are ordered by threshold, so on a day that may
+ *        trade only the strategies that actually trade are visited
+ *      - each strategy's cash, shares and transaction count live in primitive arrays indexed by strategy
+ *  Each result is exactly what runStrategy gives for the same series and parameters. The cost grows with the number
+ *  of distinct indicators rather than the number of strategies (see the fusedStrategies benchmark).
+ *
+ *  "java StockTrading readerparams.txt --compare=TICKER" runs every combination of the comma separated values of
+ *  "compare.window", "compare.buy", "compare.sell", "compare.lot" and "compare.commission" (each defaulting to the
+ *  strategy parameters in the params file, and each value may also be a start:end:step range) and prints them all.
+ */
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class StrategyEngine {
+
+    /* Variable declarations */
+    private final PriceSeries series;
+    private final List<StrategyParameters> strategies = new ArrayList<StrategyParameters>();
+    private final List<Indicator> indicators = new ArrayList<Indicator>();
+    private final Map<Integer, Integer> averageByWindow = new HashMap<Integer, Integer>();
+    private final Map<Indicator, Integer> indicatorIndex = new IdentityHashMap<Indicator, Integer>();
+    private int[] indicatorOf = new int[16];
+
+    public StrategyEngine(PriceSeries series) {
+        this.series = series;
+    }
+
+    /* Registers a strategy that uses a simple moving average over params.window days. Returns the strategy's index
+       in the results of run().
+     */
+    public int add(StrategyParameters params) {
+        Integer indicator = averageByWindow.get(params.window);
+        if (indicator == null) {
+            indicator = indicators.size();
+            indicators.add(new SimpleMovingAverage(params.window));
+            averageByWindow.put(params.window, indicator);
+        }
+        return add(params, indicator);
+    }
+
+    /* Registers a strategy that uses the given indicator as its average; its length is the strategy's window, as in
+       runStrategy, and params.window is ignored. Returns the strategy's index in the results of run().
+     */
+    public int add(StrategyParameters params, Indicator average) {
+        Integer indicator = indicatorIndex.get(average);
+        if (indicator == null) {
+            indicator = indicators.size();
+            indicators.add(average);
+            indicatorIndex.put(average, indicator);
+        }
+        return add(params.withWindow(average.length()), indicator);
+    }
+
+    private int add(StrategyParameters params, int indicator) {
+        int index = strategies.size();
+        if (index == indicatorOf.length) {
+            indicatorOf = Arrays.copyOf(indicatorOf, 2 * index);
+        }
+        indicatorOf[index] = indicator;
+        strategies.add(params);
+        return index;
+    }
+
+    /* Number of strategies registered */
+    public int size() {
+        return strategies.size();
+    }
+
+    /* Number of distinct indicators the strategies read */
+    public int indicators() {
+        return indicators.size();
+    }
+
+    /* Returns the strategies registered so far, in the order they were added */
+    public List<StrategyParameters> strategies() {
+        return strategies;
+    }
+
+    /* Runs every registered strategy over the series and returns their results in the order they were added. The
+       rules, transaction prices and final sale are those of runStrategy.
+     */
+    public TradingResult[] run() {
+        long started = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        int count = strategies.size();
+        int groups = indicators.size();
+        int size = series.size();
+
+        /* Lay the strategies out grouped by indicator, highest buy threshold first within a group */
+        int[] groupStart = new int[groups + 1];
+        for (int s = 0; s < count; s++) {
+            groupStart[indicatorOf[s] + 1]++;
+        }
+        for (int k = 0; k < groups; k++) {
+            groupStart[k + 1] += groupStart[k];
+        }
+        Integer[] grouped = new Integer[count];
+        int[] filled = Arrays.copyOf(groupStart, groups);
+        for (int s = 0; s < count; s++) {
+            grouped[filled[indicatorOf[s]]++] = s;
+        }
+        for (int k = 0; k < groups; k++) {
+            Arrays.sort(grouped, groupStart[k], groupStart[k + 1], (a, b) ->
+                    Double.compare(strategies.get(b).buyThreshold, strategies.get(a).buyThreshold));
+        }
+
+        int[] order = new int[count];
+        int[] lot = new int[count];
+        double[] buy = new double[count];
+        double[] sell = new double[count];
+        double[] commission = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = grouped[i];
+            StrategyParameters params = strategies.get(order[i]);
+            lot[i] = params.lotSize;
+            buy[i] = params.buyThreshold;
+            sell[i] = params.sellThreshold;
+            commission[i] = params.commission;
+        }
+
+        /* The same strategies by lowest sell threshold first, as positions in the arrays above */
+        Integer[] sellFirst = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            sellFirst[i] = i;
+        }
+        int[] bySell = new int[count];
+        for (int k = 0; k < groups; k++) {
+            Arrays.sort(sellFirst, groupStart[k], groupStart[k + 1], (a, b) -> Double.compare(sell[a], sell[b]));
+            for (int i = groupStart[k]; i < groupStart[k + 1]; i++) {
+                bySell[i] = sellFirst[i];
+            }
+        }
+
+        /* The ratios the rules compare against, computed once for every group */
+        double[] closeOverOpen = new double[size];
+        double[] openOverPrevClose = new double[size];
+        for (int day = 0; day < size; day++) {
+            closeOverOpen[day] = series.close(day) / series.open(day);
+            openOverPrevClose[day] = (day == 0) ? Double.NaN : series.open(day) / series.close(day - 1);
+        }
+
+        double[] cash = new double[count];
+        int[] shares = new int[count];
+        int[] transCount = new int[count];
+        TradingResult[] results = new TradingResult[count];
+        long trades = 0;
+
+        /* Strategies that read different indicators never affect each other, so each group gets its own pass */
+        for (int k = 0; k < groups; k++) {
+            int from = groupStart[k];
+            int to = groupStart[k + 1];
+            Indicator average = indicators.get(k);
+            int window = average.length();
+            if (size <= window + 1) {
+                for (int i = from; i < to; i++) {
+                    results[order[i]] = new TradingResult(false, 0, 0);
+                }
+                continue;
+            }
+            double highestBuy = buy[from];
+            double lowestSell = sell[bySell[from]];
+
+            average.reset();
+            for (int day = 0; day < window; day++) {
+                average.update(series.close(day));
+            }
+
+            /* Most days not even the most lenient strategy of the group buys or sells, so the group is passed over
+               with two comparisons. On a buying day only the strategies with a buy threshold above today's ratio
+               trade and they come first; on a selling day likewise the ones with a sell threshold below it.
+             */
+            for (int today = window; today < size - 1; today++) {
+                double avgClosePrice = average.value();
+                double open = series.open(today);
+                double close = series.close(today);
+                boolean mayBuy = close < avgClosePrice && closeOverOpen[today] < highestBuy;
+                boolean maySell = open > avgClosePrice && openOverPrevClose[today] > lowestSell;
+
+                if (mayBuy && !maySell) {
+                    double nextOpen = series.open(today + 1);
+                    for (int i = from; i < to && closeOverOpen[today] < buy[i]; i++) {
+                        transCount[i]++;
+                        shares[i] += lot[i];
+                        cash[i] -= (lot[i] * nextOpen);
+                        cash[i] -= commission[i];
+                    }
+                }
+                else if (maySell && !mayBuy) {
+                    double todaysAvgPrice = (open + close) / 2;
+                    for (int j = from; j < to && openOverPrevClose[today] > sell[bySell[j]]; j++) {
+                        int i = bySell[j];
+                        if (shares[i] >= lot[i]) {
+                            transCount[i]++;
+                            shares[i] -= lot[i];
+                            cash[i] += (lot[i] * todaysAvgPrice);
+                            cash[i] -= commission[i];
+                        }
+                    }
+                }
+                else if (mayBuy) {
+                    double nextOpen = series.open(today + 1);
+                    double todaysAvgPrice = (open + close) / 2;
+                    for (int i = from; i < to; i++) {
+                        if (closeOverOpen[today] < buy[i]) {
+                            transCount[i]++;
+                            shares[i] += lot[i];
+                            cash[i] -= (lot[i] * nextOpen);
+                            cash[i] -= commission[i];
+                        }
+                        else if (shares[i] >= lot[i] && openOverPrevClose[today] > sell[i]) {
+                            transCount[i]++;
+                            shares[i] -= lot[i];
+                            cash[i] += (lot[i] * todaysAvgPrice);
+                            cash[i] -= commission[i];
+                        }
+                    }
+                }
+                average.update(close);
+            }
+
+            /* Liquidate whatever each strategy still holds on the last trading day */
+            for (int i = from; i < to; i++) {
+                if (shares[i] > 0) {
+                    cash[i] += (series.open(size - 1) * shares[i]);
+                    transCount[i]++;
+                }
+                results[order[i]] = new TradingResult(true, transCount[i], cash[i]);
+                trades += transCount[i];
+            }
+        }
+        Metrics.record(Metrics.Phase.STRATEGY, started, allocated);
+        Metrics.TRADES.add(trades);
+        return results;
+    }
+
+    /* Method that reads the strategies to compare from the params file (see the top of this file), runs them over
+       'series' in one pass and prints every result
+     */
+    public static void compare(PriceSeries series, Properties props, StrategyParameters params) {
+        StrategyEngine engine = new StrategyEngine(series);
+        for (double window : values(props.getProperty("compare.window"), params.window)) {
+            for (double buy : values(props.getProperty("compare.buy"), params.buyThreshold)) {
+                for (double sell : values(props.getProperty("compare.sell"), params.sellThreshold)) {
+                    for (double lot : values(props.getProperty("compare.lot"), params.lotSize)) {
+                        for (double commission : values(props.getProperty("compare.commission"),
+                                params.commission)) {
+                            engine.add(new StrategyParameters((int) Math.round(window), buy, sell,
+                                    (int) Math.round(lot), commission));
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.printf("Comparing %d strategies over %d trading days of %s...%n", engine.size(), series.size(),
+                series.ticker);
+        long startTime = System.nanoTime();
+        TradingResult[] results = engine.run();
+        long elapsed = (System.nanoTime() - startTime) / 1000000;
+
+        DecimalFormat df = new DecimalFormat("#.##");
+        System.out.printf("%7s %10s %11s %6s %11s %13s %14s%n", "Window", "Buy below", "Sell above", "Lot",
+                "Commission", "Transactions", "Net cash");
+        for (int s = 0; s < results.length; s++) {
+            StrategyParameters strategy = engine.strategies().get(s);
+            if (!results[s].executed) {
+                System.out.printf("%7d %10s %11s %6d %11s %13s %14s%n", strategy.window, strategy.buyThreshold,
+                        strategy.sellThreshold, strategy.lotSize, df.format(strategy.commission), "-", "-");
+            }
+            else {
+                System.out.printf("%7d %10s %11s %6d %11s %13d %14s%n", strategy.window, strategy.buyThreshold,
+                        strategy.sellThreshold, strategy.lotSize, df.format(strategy.commission),
+                        results[s].transCount, df.format(results[s].cash));
+            }
+        }
+        System.out.printf("Compared %d strategies in %d ms%n%n", results.length, elapsed);
+    }
+
+    /* Parses a comma separated list of values or start:end:step ranges, or returns 'otherwise' if there is none */
+    private static double[] values(String spec, double otherwise) {
+        if (spec == null || spec.trim().length() == 0) {
+            return new double[] {otherwise};
+        }
+        double[] values = new double[0];
+        for (String part : spec.split(",")) {
+            double[] range = ParameterSweep.range(part);
+            int at = values.length;
+            values = Arrays.copyOf(values, at + range.length);
+            System.arraycopy(range, 0, values, at, range.length);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,65 @@
+/* Donald W. Strong
+ *
+ *  This class holds the tunable parameters of the investment strategy:
+ *      window = number of trading days in the rolling average of closing prices
+ *      buyThreshold = buy when today's close / open falls below this (and the close is below the average)
+ *      sellThreshold = sell when today's open / yesterday's close rises above this (and the open is above the average)
+ *      lotSize = number of shares bought or sold in one transaction
+ *      commission = fee charged for every buy and sell
+ *  DEFAULT holds the values the strategy has always used. The thresholds carry a tiny tolerance (THRESHOLD_TOLERANCE,
+ *  also added to the thresholds of the ParameterSweep grid) so that a ratio of exactly 0.97 or 1.01 still counts once
+ *  rounding error is taken into account.
+ */
+import java.util.Properties;
+
+public class StrategyParameters {
+
+    /* Added to buy thresholds and taken off sell thresholds */
+    public static final double THRESHOLD_TOLERANCE = 0.00000001;
+
+    /* 0.97000001 and 1.00999999 */
+    public static final StrategyParameters DEFAULT = new StrategyParameters(50, 0.97 + THRESHOLD_TOLERANCE,
+            1.01 - THRESHOLD_TOLERANCE, 100, 8);
+
+    /* Variable declarations */
+    public final int window;
+    public final double buyThreshold;
+    public final double sellThreshold;
+    public final int lotSize;
+    public final double commission;
+
+    public StrategyParameters(int window, double buyThreshold, double sellThreshold, int lotSize,
+                              double commission) {
+        if (window < 1 || lotSize < 1) {
+            throw new IllegalArgumentException("Window and lot size must be at least 1: " + window + ", " +
+                    lotSize);
+        }
+        this.window = window;
+        this.buyThreshold = buyThreshold;
+        this.sellThreshold = sellThreshold;
+        this.lotSize = lotSize;
+        this.commission = commission;
+    }
+
+    /* Reads the parameters from the params file, e.g. "window=200", "buy=0.95", "sell=1.02", "lot=50" or
+       "commission=5". Any parameter that is not given keeps its default value.
+     */
+    public static StrategyParameters fromProperties(Properties props) {
+        return new StrategyParameters(
+                Integer.parseInt(props.getProperty("window", String.valueOf(DEFAULT.window)).trim()),
+                Double.parseDouble(props.getProperty("buy", String.valueOf(DEFAULT.buyThreshold)).trim()),
+                Double.parseDouble(props.getProperty("sell", String.valueOf(DEFAULT.sellThreshold)).trim()),
+                Integer.parseInt(props.getProperty("lot", String.valueOf(DEFAULT.lotSize)).trim()),
+                Double.parseDouble(props.getProperty("commission", String.valueOf(DEFAULT.commission)).trim()));
+    }
+
+    /* Returns a copy of these parameters with a different rolling average window */
+    public StrategyParameters withWindow(int window) {
+        return new StrategyParameters(window, buyThreshold, sellThreshold, lotSize, commission);
+    }
+
+    public String toString() {
+        return "window=" + window + " buy<" + buyThreshold + " sell>" + sellThreshold + " lot=" + lotSize +
+                " commission=" + commission;
+    }
+}
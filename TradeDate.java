@@ -0,0 +1,118 @@
+/* Donald W. Strong
+ *
+ *  This class converts between the "YYYY.MM.DD" strings used by the pricevolume table and a packed int holding the
+ *  number of days since 1970.01.01 (the epoch day). Dates are stored as epoch days inside a PriceSeries so that each
+ *  trading day costs four bytes instead of a String object.
+ */
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+public final class TradeDate {
+
+    private TradeDate() {
+    }
+
+    /* Parses a date in the format YYYY.MM.DD (any single character may separate the fields) into an epoch day. A date
+       that does not exist (e.g. 2001.02.30) is rejected like a malformed one, with an IllegalArgumentException.
+     */
+    public static int parse(String date) {
+        String s = date.trim();
+        if (s.length() != 10) {
+            throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD: " + date);
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        try {
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        }
+        catch (DateTimeException ex) {
+            throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD: " + date, ex);
+        }
+    }
+
+    /* Same as above, for a date read as bytes (e.g. with ResultSet.getBytes). The digits are parsed in place, so no
+       String or LocalDate is created.
+     */
+    public static int parse(byte[] date) {
+        int from = 0;
+        int to = date.length;
+        while (from < to && date[from] <= ' ') {
+            from++;
+        }
+        while (to > from && date[to - 1] <= ' ') {
+            to--;
+        }
+        if (to - from != 10) {
+            throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD: " +
+                    new String(date, StandardCharsets.US_ASCII));
+        }
+        int month = digits(date, from + 5, from + 7);
+        int day = digits(date, from + 8, from + 10);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD: " +
+                    new String(date, StandardCharsets.US_ASCII));
+        }
+        return epochDay(digits(date, from, from + 4), month, day);
+    }
+
+    /* Returns the epoch day of a calendar date without creating a LocalDate (the fields are not validated). Used when
+       parsing dates straight out of a file, see FlatFilePriceSource.
+     */
+    public static int epochDay(int year, int month, int day) {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /* Formats an epoch day back into the YYYY.MM.DD format */
+    public static String format(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        char[] chars = new char[10];
+        writeDigits(chars, 0, 4, date.getYear());
+        chars[4] = '.';
+        writeDigits(chars, 5, 2, date.getMonthValue());
+        chars[7] = '.';
+        writeDigits(chars, 8, 2, date.getDayOfMonth());
+        return new String(chars);
+    }
+
+    /* Reads the decimal number held in s[from, to) */
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD: " + s);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /* Reads the decimal number held in bytes[from, to) */
+    private static int digits(byte[] bytes, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Expected a date in the format YYYY.MM.DD: " +
+                        new String(bytes, StandardCharsets.US_ASCII));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /* Writes 'value' as a zero padded decimal number of 'width' digits starting at chars[from] */
+    private static void writeDigits(char[] chars, int from, int width, int value) {
+        for (int i = from + width - 1; i >= from; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/* Donald W. Strong
+ *
+ *  This class holds the outcome of running the investment strategy over one PriceSeries:
+ *      executed = false if the series was too short to build the rolling average, in which case nothing was traded
+ *      transCount = the number of buy and sell transactions executed (including the final sale)
+ *      cash = the net cash accrued once all remaining shares were liquidated
+ */
+public class TradingResult {
+
+    /* Variable declarations */
+    public final boolean executed;
+    public final int transCount;
+    public final double cash;
+
+    public TradingResult(boolean executed, int transCount, double cash) {
+        this.executed = executed;
+        this.transCount = transCount;
+        this.cash = cash;
+    }
+}
@@ -0,0 +1,376 @@
+/* Donald W. Strong
+ *
+ *  This class defines the investment strategy's transaction log. The strategy does not write anything itself: each
+ *  buy, sell or final sale is copied into a slot of a ring buffer (a handful of primitive stores, no locks and no
+ *  objects created) and a background thread drains the buffer to the file in large batches. The file is only flushed
+ *  when the buffer runs empty, and it is closed (after everything has been written) by close().
+ *
+ *  Several strategies may log at once (as in a batch run): each claims its slot by incrementing a shared counter, and
+ *  publishes it once filled in. A strategy only waits if it gets a whole buffer ahead of the writer.
+ *
+ *  The log can be written in three formats:
+ *      TEXT = the "Buy: ...", "Sell: ..." and "Final sale: ..." lines of translog.txt, under a "Ticker: ..." line
+ *      CSV = one row per transaction: ticker,action,date,shares,price,total_shares,cash,average
+ *      BINARY = an int MAGIC and VERSION, then records starting with a one byte kind:
+ *                  TICKER: UTF ticker, for the transactions that follow
+ *                  BUY, SELL: int epoch day, int shares, double price, int total shares, double cash
+ *                  FINAL_SALE: int epoch day, int shares, double price, int total shares, double cash, double average
+ *  In TEXT and BINARY the ticker is written whenever it differs from the transaction before, or up front with ticker()
+ *  (so a log of a strategy that never trades still names its ticker).
+ */
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class TransactionLog implements Closeable {
+
+    public enum Format {
+        TEXT("translog.txt"), CSV("translog.csv"), BINARY("translog.bin");
+
+        /* File written when the params file does not name one */
+        public final String defaultFile;
+
+        Format(String defaultFile) {
+            this.defaultFile = defaultFile;
+        }
+
+        /* Reads a format name from the params file, e.g. "translog.format=csv" */
+        public static Format of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /* Record kinds, as written to BINARY logs */
+    static final byte TICKER = 0;
+    static final byte BUY = 1;
+    static final byte SELL = 2;
+    static final byte FINAL_SALE = 3;
+
+    static final int MAGIC = 0x5354584c; // "STXL"
+    static final int VERSION = 1;
+
+    /* Default number of slots in the ring buffer (a power of two) */
+    static final int DEFAULT_CAPACITY = 1 << 11;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final long IDLE_PARK_NANOS = 200000;
+
+    /* The ring buffer, one array per field. published[i] holds the sequence number last written to slot i */
+    private final int mask;
+    private final byte[] kinds;
+    private final String[] tickers;
+    private final int[] dates;
+    private final int[] shares;
+    private final int[] totalShares;
+    private final double[] prices;
+    private final double[] cash;
+    private final double[] averages;
+    private final AtomicLongArray published;
+
+    /* Next sequence number to claim, and the number of records the writer has finished with */
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    /* Variable declarations */
+    private final Path file;
+    private final Format format;
+    private final Writer text;
+    private final DataOutputStream binary;
+    private final Thread writer;
+    private volatile boolean closing;
+    private volatile IOException failure;
+    private String lastTicker;
+    private final StringBuilder line = new StringBuilder(128);
+
+    private TransactionLog(Path file, Format format, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.file = file;
+        this.format = format;
+        mask = capacity - 1;
+        kinds = new byte[capacity];
+        tickers = new String[capacity];
+        dates = new int[capacity];
+        shares = new int[capacity];
+        totalShares = new int[capacity];
+        prices = new double[capacity];
+        cash = new double[capacity];
+        averages = new double[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+
+        BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        if (format == Format.BINARY) {
+            text = null;
+            binary = new DataOutputStream(out);
+            binary.writeInt(MAGIC);
+            binary.writeInt(VERSION);
+        }
+        else {
+            text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            binary = null;
+            if (format == Format.CSV) {
+                text.write("ticker,action,date,shares,price,total_shares,cash,average\n");
+            }
+        }
+
+        writer = new Thread(this::drain, "translog-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /* Creates (or truncates) 'file' and starts the background writer */
+    public static TransactionLog open(Path file, Format format) throws IOException {
+        return new TransactionLog(file, format, DEFAULT_CAPACITY);
+    }
+
+    public static TransactionLog open(Path file, Format format, int capacity) throws IOException {
+        return new TransactionLog(file, format, capacity);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /* Writes the ticker line for the transactions that follow, even if there turn out to be none. Nothing is written
+       in CSV, where every row names its ticker.
+     */
+    public void ticker(String ticker) {
+        publish(TICKER, ticker, 0, 0, 0, 0, 0, 0);
+    }
+
+    /* Logs a purchase of 'lot' shares at 'price' on 'date' (an epoch day), leaving 'total' shares and 'cashLeft' */
+    public void buy(String ticker, int date, int lot, double price, int total, double cashLeft) {
+        publish(BUY, ticker, date, lot, price, total, cashLeft, 0);
+    }
+
+    /* Logs a sale of 'lot' shares at 'price' on 'date', leaving 'total' shares and 'cashLeft' */
+    public void sell(String ticker, int date, int lot, double price, int total, double cashLeft) {
+        publish(SELL, ticker, date, lot, price, total, cashLeft, 0);
+    }
+
+    /* Logs the sale of the shares still held at the end of the strategy, along with the last rolling average */
+    public void finalSale(String ticker, int date, int count, double price, double cashLeft, double average) {
+        publish(FINAL_SALE, ticker, date, count, price, 0, cashLeft, average);
+    }
+
+    private void publish(byte kind, String ticker, int date, int count, double price, int total, double cashLeft,
+                         double average) {
+        long sequence = claimed.getAndIncrement();
+
+        /* Wait for the writer if the slot still holds a record it has not written yet */
+        while (sequence - consumed > mask) {
+            if (failure != null || !writer.isAlive()) {
+                throw new IllegalStateException("Transaction log writer stopped", failure);
+            }
+            LockSupport.unpark(writer);
+            Thread.yield();
+        }
+
+        int slot = (int) sequence & mask;
+        kinds[slot] = kind;
+        tickers[slot] = ticker;
+        dates[slot] = date;
+        shares[slot] = count;
+        prices[slot] = price;
+        totalShares[slot] = total;
+        cash[slot] = cashLeft;
+        averages[slot] = average;
+        published.lazySet(slot, sequence);
+    }
+
+    /* The background writer. Writes records in sequence order as they are published, and flushes whenever it has
+       caught up with the strategies.
+     */
+    private void drain() {
+        long next = 0;
+        try {
+            while (true) {
+                int slot = (int) next & mask;
+                if (published.get(slot) == next) {
+                    write(slot);
+                    tickers[slot] = null;
+                    next++;
+                    consumed = next;
+                }
+                else if (closing && next == claimed.get()) {
+                    break;
+                }
+                else {
+                    flush();
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+            flush();
+        }
+        catch (IOException ex) {
+            failure = ex;
+        }
+    }
+
+    private void write(int slot) throws IOException {
+        String ticker = tickers[slot];
+        byte kind = kinds[slot];
+        boolean newTicker = !ticker.equals(lastTicker);
+        lastTicker = ticker;
+
+        if (format == Format.BINARY) {
+            if (newTicker) {
+                binary.writeByte(TICKER);
+                binary.writeUTF(ticker);
+            }
+            if (kind == TICKER) {
+                return;
+            }
+            binary.writeByte(kind);
+            binary.writeInt(dates[slot]);
+            binary.writeInt(shares[slot]);
+            binary.writeDouble(prices[slot]);
+            binary.writeInt(totalShares[slot]);
+            binary.writeDouble(cash[slot]);
+            if (kind == FINAL_SALE) {
+                binary.writeDouble(averages[slot]);
+            }
+            return;
+        }
+
+        line.setLength(0);
+        if (kind == TICKER) {
+            if (newTicker && format == Format.TEXT) {
+                line.append("Ticker: ").append(ticker).append(NEWLINE);
+            }
+        }
+        else if (format == Format.CSV) {
+            line.append(ticker).append(kind == BUY ? ",buy," : (kind == SELL) ? ",sell," : ",final sale,");
+            line.append(TradeDate.format(dates[slot])).append(',').append(shares[slot]).append(',');
+            appendDecimal(line, prices[slot]);
+            line.append(',').append(totalShares[slot]).append(',');
+            appendDecimal(line, cash[slot]);
+            line.append(',');
+            if (kind == FINAL_SALE) {
+                appendDecimal(line, averages[slot]);
+            }
+            line.append('\n');
+        }
+        /* TEXT, the same lines the strategy has always written */
+        else {
+            if (newTicker) {
+                line.append("Ticker: ").append(ticker).append(NEWLINE);
+            }
+            line.append(kind == BUY ? "Buy: " : (kind == SELL) ? "Sell: " : "Final sale: ");
+            line.append(TradeDate.format(dates[slot])).append(' ').append(shares[slot]).append(" shares @ ");
+            appendDecimal(line, prices[slot]);
+            if (kind != FINAL_SALE) {
+                line.append(", total shares = ").append(totalShares[slot]);
+            }
+            line.append(", cash = ");
+            appendDecimal(line, cash[slot]);
+            if (kind == FINAL_SALE) {
+                line.append(" (average = ");
+                appendDecimal(line, averages[slot]);
+                line.append(')');
+            }
+            line.append(NEWLINE);
+        }
+        text.append(line);
+    }
+
+    /* Appends a price or cash amount with seven decimals, exactly as printf's %.7f would: the shortest decimal form
+       of the value (Double.toString) rounded half up. Values Double.toString writes in scientific notation (below
+       0.001 or from 10^7 up) go through BigDecimal instead.
+     */
+    static void appendDecimal(StringBuilder out, double value) {
+        String digits = Double.toString(value);
+        int point = digits.indexOf('.');
+        if (digits.indexOf('E') >= 0) {
+            String rounded = BigDecimal.valueOf(value).setScale(7, RoundingMode.HALF_UP).toPlainString();
+            if (value < 0 && rounded.charAt(0) != '-') {
+                out.append('-');
+            }
+            out.append(rounded);
+            return;
+        }
+        int decimals = digits.length() - point - 1;
+        if (decimals <= 7) {
+            out.append(digits);
+            for (int i = decimals; i < 7; i++) {
+                out.append('0');
+            }
+            return;
+        }
+
+        int start = out.length();
+        out.append(digits, 0, point + 8);
+        if (digits.charAt(point + 8) < '5') {
+            return;
+        }
+        /* Round up, carrying through any 9s */
+        for (int i = out.length() - 1; ; i--) {
+            if (i < start || out.charAt(i) == '-') {
+                out.insert(i + 1, '1');
+                return;
+            }
+            char c = out.charAt(i);
+            if (c == '9') {
+                out.setCharAt(i, '0');
+            }
+            else if (c != '.') {
+                out.setCharAt(i, (char) (c + 1));
+                return;
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (text != null) {
+            text.flush();
+        }
+        else {
+            binary.flush();
+        }
+    }
+
+    /* Waits for every logged transaction to be written, then closes the file */
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            }
+            catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (text != null) {
+            text.close();
+        }
+        else {
+            binary.close();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
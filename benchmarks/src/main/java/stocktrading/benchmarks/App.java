@@ -0,0 +1,87 @@
+/* Donald W. Strong
+ *
+ *  This class gives the benchmarks access to the program's classes. They are in the default package, which a named
+ *  package cannot import (and JMH will not generate benchmarks in the default package), so constructors and methods
+ *  are looked up once by name during setup and invoked reflectively. The cost of Method.invoke is a few nanoseconds,
+ *  small next to the work of the benchmarked calls.
+ */
+package stocktrading.benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+final class App {
+
+    private App() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("StockTrading class " + name + " is not on the class path", ex);
+        }
+    }
+
+    static Constructor<?> constructor(String type, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = type(type).getDeclaredConstructor(parameters);
+            constructor.setAccessible(true);
+            return constructor;
+        }
+        catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static Method method(String type, String name, Class<?>... parameters) {
+        try {
+            Method method = type(type).getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            return method;
+        }
+        catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static Object constant(String type, String name) {
+        try {
+            Field field = type(type).getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(null);
+        }
+        catch (NoSuchFieldException | IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static Object create(Constructor<?> constructor, Object... arguments) throws Exception {
+        try {
+            return constructor.newInstance(arguments);
+        }
+        catch (InvocationTargetException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    static Object call(Method method, Object target, Object... arguments) throws Exception {
+        try {
+            return method.invoke(target, arguments);
+        }
+        catch (InvocationTargetException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private static Exception unwrap(InvocationTargetException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return (cause instanceof Exception) ? (Exception) cause : ex;
+    }
+}
@@ -0,0 +1,153 @@
+/* Donald W. Strong
+ *
+ *  This program compares a JMH run against the checked-in baseline. Both files are JMH JSON results
+ *  (-rf json -rff <file>). For every benchmark and parameter combination found in both, it prints the throughput of
+ *  each run, the change, and the bytes allocated per operation when the runs used the GC profiler (-prof gc):
+ *
+ *      java -cp target/benchmarks.jar stocktrading.benchmarks.BaselineCompare baseline.json results.json
+ *
+ *  Results that only appear in one of the files are listed at the end.
+ */
+package stocktrading.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BaselineCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: BaselineCompare baseline.json results.json");
+            return;
+        }
+        Map<String, Map<?, ?>> baseline = results(args[0]);
+        Map<String, Map<?, ?>> current = results(args[1]);
+
+        System.out.printf("%-48s %14s %14s %8s %14s %14s%n", "Benchmark", "Baseline", "Current", "Change",
+                "Baseline B/op", "Current B/op");
+        List<String> unmatched = new ArrayList<String>();
+        for (Map.Entry<String, Map<?, ?>> entry : current.entrySet()) {
+            Map<?, ?> before = baseline.remove(entry.getKey());
+            if (before == null) {
+                unmatched.add("only in " + args[1] + ": " + entry.getKey());
+                continue;
+            }
+            double oldScore = score(before);
+            double newScore = score(entry.getValue());
+            System.out.printf("%-48s %14.2f %14.2f %+7.1f%% %14s %14s%n", entry.getKey(), oldScore, newScore,
+                    (newScore - oldScore) / oldScore * 100, allocation(before), allocation(entry.getValue()));
+        }
+        for (String key : baseline.keySet()) {
+            unmatched.add("only in " + args[0] + ": " + key);
+        }
+        for (String line : unmatched) {
+            System.out.println(line);
+        }
+    }
+
+    /* Reads a JMH JSON file into a map from "benchmark(params)" to the result */
+    private static Map<String, Map<?, ?>> results(String file) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Map<String, Map<?, ?>> results = new LinkedHashMap<String, Map<?, ?>>();
+        for (Object result : (List<?>) new Json(json).value()) {
+            Map<?, ?> fields = (Map<?, ?>) result;
+            String name = (String) fields.get("benchmark");
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+            Object params = fields.get("params");
+            results.put(name + (params == null ? "" : params.toString()), fields);
+        }
+        return results;
+    }
+
+    private static double score(Map<?, ?> result) {
+        return number(((Map<?, ?>) result.get("primaryMetric")).get("score"));
+    }
+
+    private static String allocation(Map<?, ?> result) {
+        Map<?, ?> secondary = (Map<?, ?>) result.get("secondaryMetrics");
+        Map<?, ?> norm = (secondary == null) ? null : (Map<?, ?>) secondary.get("gc.alloc.rate.norm");
+        return (norm == null) ? "-" : String.format("%.0f", number(norm.get("score")));
+    }
+
+    /* JMH writes scores that could not be measured as the string "NaN" */
+    private static double number(Object value) {
+        return (value instanceof Double) ? (Double) value : Double.parseDouble(value.toString());
+    }
+
+    /* Just enough of a JSON reader for JMH's result files: objects, arrays, strings, numbers, true/false/null */
+    private static final class Json {
+        private final String text;
+        private int pos;
+
+        Json(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipSpace();
+            char c = text.charAt(pos);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<String, Object>();
+                pos++;
+                while (!consume('}')) {
+                    consume(',');
+                    skipSpace();
+                    String key = (String) value();
+                    consume(':');
+                    object.put(key, value());
+                }
+                return object;
+            }
+            if (c == '[') {
+                List<Object> array = new ArrayList<Object>();
+                pos++;
+                while (!consume(']')) {
+                    consume(',');
+                    array.add(value());
+                }
+                return array;
+            }
+            if (c == '"') {
+                StringBuilder string = new StringBuilder();
+                for (pos++; text.charAt(pos) != '"'; pos++) {
+                    if (text.charAt(pos) == '\\') {
+                        pos++;
+                    }
+                    string.append(text.charAt(pos));
+                }
+                pos++;
+                return string.toString();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String word = text.substring(start, pos);
+            if (word.equals("true") || word.equals("false")) {
+                return Boolean.valueOf(word);
+            }
+            return word.equals("null") ? null : (Object) Double.valueOf(word);
+        }
+
+        private boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/* Donald W. Strong
+ *
+ *  This class stands in for the johnson330 database in the ingestion benchmarks. connection() returns a JDBC
+ *  Connection whose pricevolume queries answer from a SyntheticPrices history held in memory, most recent day first,
+ *  the way the real queries are ordered. The columns returned are the ones named in the query's select list, so
+ *  PriceQueries reads exactly what it would read from MySQL.
+ *
+ *  Only what PriceQueries uses is implemented (prepareStatement, setString, setFetchSize, executeQuery, next,
+ *  getString, getBytes, getDouble and close). Query parameters are ignored, so every query returns the whole history,
+ *  except for "TransDate > ?", which stops at that day (the split index scans only the days after its last one).
+ *  Dates are handed out as Strings or bytes created once up front, so the allocation measured is that of the
+ *  ingestion pipeline rather than of a driver decoding rows.
+ */
+package stocktrading.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Locale;
+
+final class InMemoryDatabase {
+
+    private InMemoryDatabase() {
+    }
+
+    static Connection connection(SyntheticPrices prices) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    String sql = (String) args[0];
+                    return statement(prices, columns(sql, prices), afterParameter(sql));
+                case "close":
+                    return null;
+                default:
+                    return unsupported(method);
+            }
+        });
+    }
+
+    private static PreparedStatement statement(SyntheticPrices prices, double[][] columns, int afterParameter) {
+        String[] after = new String[1];
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "executeQuery":
+                    return new Rows(prices, columns, after[0]).resultSet();
+                case "setString":
+                    if ((Integer) args[0] == afterParameter) {
+                        after[0] = (String) args[1];
+                    }
+                    return null;
+                case "setFetchSize":
+                case "close":
+                    return null;
+                default:
+                    return unsupported(method);
+            }
+        });
+    }
+
+    /* The price columns of a query, by position in its select list (column 1 is always TransDate) */
+    private static double[][] columns(String sql, SyntheticPrices prices) {
+        String select = sql.toLowerCase(Locale.ROOT);
+        String[] names = select.substring(select.indexOf("select") + 6, select.indexOf(" from ")).split(",");
+        double[][] columns = new double[names.length + 1][];
+        for (int i = 1; i < names.length; i++) {
+            switch (names[i].trim()) {
+                case "openprice":
+                    columns[i + 1] = prices.open;
+                    break;
+                case "highprice":
+                    columns[i + 1] = prices.high;
+                    break;
+                case "lowprice":
+                    columns[i + 1] = prices.low;
+                    break;
+                case "closeprice":
+                    columns[i + 1] = prices.close;
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown column " + names[i] + " in " + sql);
+            }
+        }
+        return columns;
+    }
+
+    /* The position of the "TransDate > ?" parameter in a query, or 0 if it has none */
+    private static int afterParameter(String sql) {
+        int bound = sql.indexOf("TransDate > ?");
+        if (bound < 0) {
+            return 0;
+        }
+        int position = 0;
+        for (int i = 0; i <= bound + 12; i++) {
+            if (sql.charAt(i) == '?') {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    /* The cursor of one executed query, moving from the most recent day back to the oldest */
+    private static final class Rows implements InvocationHandler {
+        private final SyntheticPrices prices;
+        private final double[][] columns;
+        private final String after;
+        private int row;
+
+        Rows(SyntheticPrices prices, double[][] columns, String after) {
+            this.prices = prices;
+            this.columns = columns;
+            this.after = after;
+            this.row = prices.days;
+        }
+
+        ResultSet resultSet() {
+            return proxy(ResultSet.class, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "next":
+                    return --row >= 0 && (after == null || prices.dates[row].compareTo(after) > 0);
+                case "getString":
+                    return prices.dates[row];
+                case "getBytes":
+                    return prices.dateBytes[row];
+                case "getDouble":
+                    return columns[(Integer) args[0]][row];
+                case "close":
+                    return null;
+                default:
+                    return unsupported(method);
+            }
+        }
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InMemoryDatabase.class.getClassLoader(), new Class<?>[] {type},
+                handler));
+    }
+
+    private static Object unsupported(Method method) {
+        throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName() +
+                " is not supported by the benchmark database");
+    }
+}
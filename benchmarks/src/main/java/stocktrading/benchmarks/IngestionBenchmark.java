@@ -0,0 +1,124 @@
+/* Donald W. Strong
+ *
+ *  Benchmarks for reading price history: the full ingestion pipeline behind getPriceVolume (row parsing, split
+ *  detection and adjustment into a PriceSeries) and the split scan used to keep the split index up to date. Both read
+ *  from InMemoryDatabase, so they measure PriceQueries itself rather than MySQL and the network. Each history has
+ *  three 2:1 splits. rangeLookup is a date range query (the middle half of the history) on a ticker whose full history
+ *  JdbcPriceSource has already read, which it answers from memory once the split index finds no newer rows.
+ *
+ *  The stand-in database is built from java.lang.reflect.Proxy, which boxes every value it returns. resultSetOnly reads
+ *  the same rows without doing anything with them; subtract its time and allocation from priceVolume to get the cost
+ *  of the pipeline alone.
+ */
+package stocktrading.benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final String TICKER = "BENCH";
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    /* Variable declarations */
+    private Connection connection;
+    private Object queries;
+    private Method priceVolume;
+    private Method splitScan;
+    private Constructor<?> newDetector;
+    private int allDates;
+    private Path splitIndexFile;
+    private Object source;
+    private Method rangeVolume;
+    private String rangeStart;
+    private String rangeEnd;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticPrices prices = SyntheticPrices.generate(rows, rows / 4, 42);
+        connection = InMemoryDatabase.connection(prices);
+        queries = App.create(App.constructor("PriceQueries", Connection.class), connection);
+        priceVolume = App.method("PriceQueries", "priceVolume", String.class);
+        Class<?> detector = App.type("SplitDetector");
+        splitScan = App.method("PriceQueries", "splitScan", String.class, int.class, detector);
+        newDetector = App.constructor("SplitDetector");
+        allDates = (Integer) App.constant("PriceQueries", "ALL_DATES");
+
+        splitIndexFile = Files.createTempFile("splits", ".idx");
+        Files.delete(splitIndexFile);
+        Object splitIndex = App.call(App.method("SplitIndex", "load", Path.class), null, splitIndexFile);
+        source = App.create(App.constructor("JdbcPriceSource", App.type("PriceQueries"), App.type("SplitIndex")),
+                App.create(App.constructor("PriceQueries", Connection.class), connection), splitIndex);
+        App.call(App.method("JdbcPriceSource", "priceVolume", String.class), source, TICKER);
+        rangeVolume = App.method("JdbcPriceSource", "priceVolume", String.class, String.class, String.class);
+        Method format = App.method("TradeDate", "format", int.class);
+        rangeStart = (String) App.call(format, null, prices.epochDays[rows / 4]);
+        rangeEnd = (String) App.call(format, null, prices.epochDays[rows * 3 / 4]);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(splitIndexFile);
+    }
+
+    /* Reading every column of every row straight from the ResultSet */
+    @Benchmark
+    public void resultSetOnly(Blackhole blackhole) throws Exception {
+        try (PreparedStatement query = connection.prepareStatement("select TransDate, OpenPrice, HighPrice," +
+                " LowPrice, ClosePrice from pricevolume where Ticker = ? order by TransDate DESC");
+             ResultSet results = query.executeQuery()) {
+            while (results.next()) {
+                blackhole.consume(results.getBytes(1));
+                blackhole.consume(results.getDouble(2));
+                blackhole.consume(results.getDouble(3));
+                blackhole.consume(results.getDouble(4));
+                blackhole.consume(results.getDouble(5));
+            }
+        }
+    }
+
+    /* The full history query: every column of every row, adjusted for splits into a PriceSeries */
+    @Benchmark
+    public Object priceVolume() throws Exception {
+        return App.call(priceVolume, queries, TICKER);
+    }
+
+    /* Split detection alone, over the dates and opening and closing prices */
+    @Benchmark
+    public Object splitScan() throws Exception {
+        return App.call(splitScan, queries, TICKER, allDates, App.create(newDetector));
+    }
+
+    /* A date range of a ticker whose full history has been read, cut out of it by binary search */
+    @Benchmark
+    public Object rangeLookup() throws Exception {
+        return App.call(rangeVolume, source, TICKER, rangeStart, rangeEnd);
+    }
+}
@@ -0,0 +1,189 @@
+/* Donald W. Strong
+ *
+ *  Benchmarks for the investment strategy that getTradingInfo runs (StockTrading.runStrategy) over synthetic series
+ *  of 1k, 10k and 100k trading days, with the default strategy parameters:
+ *      strategy = the strategy alone, without a transaction log
+ *      strategyWithTranslog = the strategy writing its transaction log to a file, the way getTradingInfo does when the
+ *                             user answers y (opening the log, running the strategy and closing the log once every
+ *                             transaction has been written)
+ *      strategyWithTranslogFormat = the same, in the CSV and BINARY formats
+ *      separateStrategies = 50 variants of the strategy (5 windows x 10 buy thresholds), one runStrategy call each
+ *      fusedStrategies = the same 50 variants in one pass of StrategyEngine
+ *      sweep = a ParameterSweep grid of 20 windows x 10 buy thresholds x 11 sell thresholds (2200 combinations)
+ *  getTradingInfo itself is not called since it prompts on the console.
+ */
+package stocktrading.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StrategyBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int bars;
+
+    @State(Scope.Benchmark)
+    public static class LogFormat {
+        @Param({"CSV", "BINARY"})
+        public String format;
+
+        Object value;
+
+        @Setup
+        public void setup() throws Exception {
+            value = formatNamed(format);
+        }
+    }
+
+    /* Variable declarations */
+    private Object series;
+    private Object params;
+    private int window;
+    private Method runStrategy;
+    private Method openLog;
+    private Object textFormat;
+    private Constructor<?> newAverage;
+    private Path translog;
+    private Object[] variants;
+    private Constructor<?> newEngine;
+    private Method addStrategy;
+    private Method runEngine;
+    private Object sweep;
+    private Method runSweep;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticPrices prices = SyntheticPrices.generate(bars, 0, 7);
+        Object builder = App.create(App.constructor("PriceSeries$Builder", String.class, int.class), "BENCH", bars);
+        Method prepend = App.method("PriceSeries$Builder", "prepend", int.class, double.class, double.class,
+                double.class, double.class);
+        for (int i = bars - 1; i >= 0; i--) {
+            App.call(prepend, builder, prices.epochDays[i], prices.open[i], prices.high[i], prices.low[i],
+                    prices.close[i]);
+        }
+        series = App.call(App.method("PriceSeries$Builder", "build"), builder);
+
+        params = App.constant("StrategyParameters", "DEFAULT");
+        window = App.type("StrategyParameters").getField("window").getInt(params);
+        runStrategy = App.method("StockTrading", "runStrategy", App.type("PriceSeries"), App.type("Indicator"),
+                App.type("StrategyParameters"), App.type("TransactionLog"));
+        openLog = App.method("TransactionLog", "open", Path.class, App.type("TransactionLog$Format"));
+        textFormat = formatNamed("TEXT");
+        newAverage = App.constructor("SimpleMovingAverage", int.class);
+        translog = Files.createTempFile("translog", ".txt");
+
+        Constructor<?> newParams = App.constructor("StrategyParameters", int.class, double.class, double.class,
+                int.class, double.class);
+        variants = new Object[VARIANT_WINDOWS.length * 10];
+        for (int w = 0; w < VARIANT_WINDOWS.length; w++) {
+            for (int b = 0; b < 10; b++) {
+                variants[w * 10 + b] = App.create(newParams, VARIANT_WINDOWS[w], 0.95 + b * 0.0025, 1.01, 100, 8.0);
+            }
+        }
+        newEngine = App.constructor("StrategyEngine", App.type("PriceSeries"));
+        addStrategy = App.method("StrategyEngine", "add", App.type("StrategyParameters"));
+        runEngine = App.method("StrategyEngine", "run");
+
+        sweep = App.create(App.constructor("ParameterSweep", App.type("PriceSeries")), series);
+        runSweep = App.method("ParameterSweep", "sweep", int[].class, double[].class, double[].class, int[].class,
+                double[].class, int.class);
+    }
+
+    /* Windows of the 50 variants run by separateStrategies and fusedStrategies */
+    private static final int[] VARIANT_WINDOWS = {10, 20, 50, 100, 200};
+
+    /* Grid run by sweep */
+    private static final int[] SWEEP_WINDOWS = new int[20];
+    private static final double[] SWEEP_BUYS = new double[10];
+    private static final double[] SWEEP_SELLS = new double[11];
+    static {
+        for (int i = 0; i < SWEEP_WINDOWS.length; i++) {
+            SWEEP_WINDOWS[i] = 10 * (i + 1);
+        }
+        for (int i = 0; i < SWEEP_BUYS.length; i++) {
+            SWEEP_BUYS[i] = 0.90 + 0.01 * i;
+        }
+        for (int i = 0; i < SWEEP_SELLS.length; i++) {
+            SWEEP_SELLS[i] = 1.00 + 0.005 * i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(translog);
+    }
+
+    @Benchmark
+    public Object strategy() throws Exception {
+        return App.call(runStrategy, null, series, App.create(newAverage, window), params, null);
+    }
+
+    @Benchmark
+    public Object strategyWithTranslog() throws Exception {
+        return runWithLog(textFormat);
+    }
+
+    @Benchmark
+    public Object strategyWithTranslogFormat(LogFormat format) throws Exception {
+        return runWithLog(format.value);
+    }
+
+    @Benchmark
+    public void separateStrategies(Blackhole blackhole) throws Exception {
+        Field window = App.type("StrategyParameters").getField("window");
+        for (Object variant : variants) {
+            blackhole.consume(App.call(runStrategy, null, series, App.create(newAverage, window.getInt(variant)),
+                    variant, null));
+        }
+    }
+
+    @Benchmark
+    public Object fusedStrategies() throws Exception {
+        Object engine = App.create(newEngine, series);
+        for (Object variant : variants) {
+            App.call(addStrategy, engine, variant);
+        }
+        return App.call(runEngine, engine);
+    }
+
+    @Benchmark
+    public Object sweep() throws Exception {
+        return App.call(runSweep, sweep, SWEEP_WINDOWS, SWEEP_BUYS, SWEEP_SELLS, new int[] {100}, new double[] {8},
+                10);
+    }
+
+    private Object runWithLog(Object format) throws Exception {
+        try (Closeable log = (Closeable) App.call(openLog, null, translog, format)) {
+            return App.call(runStrategy, null, series, App.create(newAverage, window), params, log);
+        }
+    }
+
+    static Object formatNamed(String name) throws Exception {
+        return App.call(App.method("TransactionLog$Format", "of", String.class), null, name);
+    }
+}
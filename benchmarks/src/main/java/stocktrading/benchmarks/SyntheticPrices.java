@@ -0,0 +1,74 @@
+/* Donald W. Strong
+ *
+ *  This class generates a reproducible price history for the benchmarks: a random walk over weekdays that is pulled
+ *  back towards $400, with daily moves large enough that the investment strategy trades regularly. When 'splitEvery'
+ *  is positive, the unadjusted prices are halved (a 2:1 split) every 'splitEvery' days, so ingestion has splits to
+ *  detect and adjust for.
+ *
+ *  The arrays are chronological (oldest day first).
+ */
+package stocktrading.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+final class SyntheticPrices {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+    /* Variable declarations */
+    final int days;
+    final String[] dates;
+    final byte[][] dateBytes;
+    final int[] epochDays;
+    final double[] open;
+    final double[] high;
+    final double[] low;
+    final double[] close;
+
+    private SyntheticPrices(int days) {
+        this.days = days;
+        dates = new String[days];
+        dateBytes = new byte[days][];
+        epochDays = new int[days];
+        open = new double[days];
+        high = new double[days];
+        low = new double[days];
+        close = new double[days];
+    }
+
+    static SyntheticPrices generate(int days, int splitEvery, long seed) {
+        SyntheticPrices prices = new SyntheticPrices(days);
+        Random random = new Random(seed);
+
+        /* 100,000 weekdays span almost 400 years */
+        LocalDate date = LocalDate.of(1700, 1, 1);
+        double price = 400;
+        double scale = 1;
+        for (int i = 0; i < days; i++) {
+            while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                date = date.plusDays(1);
+            }
+            if (splitEvery > 0 && i > 0 && i % splitEvery == 0) {
+                scale /= 2;
+            }
+
+            /* Overnight gap, then the move during the day */
+            double openPrice = price * (1 + 0.012 * random.nextGaussian()) + 0.002 * (400 - price);
+            double closePrice = openPrice * (1 + 0.02 * random.nextGaussian());
+            prices.dates[i] = date.format(DATE_FORMAT);
+            prices.dateBytes[i] = prices.dates[i].getBytes(StandardCharsets.US_ASCII);
+            prices.epochDays[i] = (int) date.toEpochDay();
+            prices.open[i] = openPrice * scale;
+            prices.close[i] = closePrice * scale;
+            prices.high[i] = Math.max(openPrice, closePrice) * 1.005 * scale;
+            prices.low[i] = Math.min(openPrice, closePrice) * 0.995 * scale;
+            price = closePrice;
+            date = date.plusDays(1);
+        }
+        return prices;
+    }
+}
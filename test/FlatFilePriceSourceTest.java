@@ -0,0 +1,178 @@
+/* Donald W. Strong
+ *
+ *  This class tests that FlatFilePriceSource reads a flat file export the way the pricevolume queries read the table:
+ *  tabs or commas, either date format, any line order and line ending, splits detected and adjusted for, and date
+ *  ranges cut out of the history with the divisors of the full history.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FlatFilePriceSourceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsTheDaysAsWritten() throws IOException {
+        PriceSeries expected = TestPrices.series("FF", 1, 700);
+        try (FlatFilePriceSource source = open(lines(expected, Integer.MAX_VALUE, 1), "\n", true)) {
+            assertSameDays(expected, source.priceVolume("FF"));
+            assertSameDays(expected, source.priceVolume("ff"));
+            assertTrue(source.priceVolume("FF").splits().isEmpty());
+            assertTrue(source.priceVolume("NONE").isEmpty());
+        }
+    }
+
+    @Test
+    void anyLayoutGivesTheSameSeries() throws IOException {
+        PriceSeries expected = TestPrices.series("FF", 2, 500);
+        List<String> lines = lines(expected, Integer.MAX_VALUE, 1);
+
+        List<String> ascending = new ArrayList<String>(lines);
+        Collections.reverse(ascending);
+        List<String> shuffled = new ArrayList<String>(lines);
+        Collections.shuffle(shuffled, new Random(3));
+        List<String> commas = new ArrayList<String>();
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            fields[1] = fields[1].replace('.', '-');
+            commas.add(String.join(",", fields));
+        }
+
+        for (List<String> layout : Arrays.asList(ascending, shuffled, commas)) {
+            for (String newline : new String[] {"\n", "\r\n"}) {
+                for (boolean header : new boolean[] {true, false}) {
+                    try (FlatFilePriceSource source = open(layout, newline, header)) {
+                        assertSameDays(expected, source.priceVolume("FF"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void splitsAreDetectedAndAdjusted() throws IOException {
+        PriceSeries days = TestPrices.series("SPL", 4, 600);
+        int splitDate = days.date(400);
+        try (FlatFilePriceSource source = open(lines(days, splitDate, 2), "\n", true)) {
+            PriceSeries series = source.priceVolume("SPL");
+            assertEquals(1, series.splits().size());
+            SplitEvent split = series.splits().get(0);
+            assertEquals(days.date(399), split.date);
+            assertEquals(2, split.ratio);
+
+            /* The days before the split are halved, the days after it are as the file has them */
+            for (int i = 0; i < series.size(); i++) {
+                assertEquals(days.date(i), series.date(i));
+                double expected = (i < 400) ? days.close(i) / 2 : Math.round(days.close(i) / 2 * 100) / 100.0;
+                assertEquals(expected, series.close(i), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void rangesMatchTheFullHistory() throws IOException {
+        PriceSeries days = TestPrices.series("RNG", 5, 1000);
+        for (boolean ascending : new boolean[] {false, true}) {
+            List<String> lines = lines(days, days.date(600), 3);
+            if (ascending) {
+                Collections.reverse(lines);
+            }
+            try (FlatFilePriceSource source = open(lines, "\n", true)) {
+                PriceSeries full = source.priceVolume("RNG");
+                int[][] ranges = {{0, 999}, {10, 20}, {590, 610}, {599, 600}, {64, 128}, {999, 999}, {0, 0}};
+                for (int[] range : ranges) {
+                    int begin = days.date(range[0]);
+                    int end = days.date(range[1]);
+                    PriceSeries expected = full.between(begin, end);
+                    PriceSeries actual = source.priceVolume("RNG", TradeDate.format(begin), TradeDate.format(end));
+                    assertSameDays(expected, actual);
+                    assertEquals(expected.splits().size(), actual.splits().size());
+                    assertArrayEquals(new int[] {begin, end}, source.firstAndLastDay("RNG", begin, end));
+                }
+                int after = days.date(999) + 1;
+                assertTrue(source.priceVolume("RNG", after, after + 100).isEmpty());
+                assertNull(source.firstAndLastDay("RNG", after, after + 100));
+                assertArrayEquals(new int[] {days.date(0), days.date(999)},
+                        source.firstAndLastDay("RNG", Integer.MIN_VALUE, Integer.MAX_VALUE));
+                assertTrue(source.priceVolume("RNG", "2001.13.01", "2002.01.01").isEmpty());
+            }
+        }
+    }
+
+    @Test
+    void tickersMayBeInterleaved() throws IOException {
+        PriceSeries first = TestPrices.series("AAA", 6, 200);
+        PriceSeries second = TestPrices.series("BBB", 7, 150);
+        List<String> lines = new ArrayList<String>(lines(first, Integer.MAX_VALUE, 1));
+        lines.addAll(lines(second, Integer.MAX_VALUE, 1));
+        Collections.shuffle(lines, new Random(8));
+        Path names = Files.write(dir.resolve("companies.txt"),
+                Arrays.asList("AAA\tFirst Company", "BBB,Second Company"), StandardCharsets.UTF_8);
+
+        try (FlatFilePriceSource source = FlatFilePriceSource.open(write(lines, "\n", false), names)) {
+            assertSameDays(first, source.priceVolume("AAA"));
+            assertSameDays(second, source.priceVolume("BBB"));
+            assertEquals(Arrays.asList("First Company"), source.companyNames("aaa"));
+            assertEquals("Second Company", source.companies().get("BBB"));
+            assertTrue(source.companyNames("CCC").isEmpty());
+        }
+    }
+
+    @Test
+    void linesWithoutATickerAreRejected() throws IOException {
+        Path file = write(Arrays.asList("FF\t2001.01.02\t1\t1\t1\t1", "", "\t2001.01.03\t1\t1\t1\t1"), "\n", false);
+        assertThrows(IOException.class, () -> FlatFilePriceSource.open(file, null));
+    }
+
+    /* The lines TestPrices writes for a series, most recent first */
+    private static List<String> lines(PriceSeries series, int splitDate, double ratio) throws IOException {
+        StringWriter out = new StringWriter();
+        TestPrices.write(out, series, splitDate, ratio);
+        return new ArrayList<String>(Arrays.asList(out.toString().split("\\R")));
+    }
+
+    private FlatFilePriceSource open(List<String> lines, String newline, boolean header) throws IOException {
+        return FlatFilePriceSource.open(write(lines, newline, header), null);
+    }
+
+    private Path write(List<String> lines, String newline, boolean header) throws IOException {
+        StringBuilder text = new StringBuilder();
+        if (header) {
+            text.append(lines.get(0).indexOf('\t') >= 0 ? "Ticker\tTransDate\tOpenPrice" : "Ticker,TransDate,OpenPrice")
+                    .append(newline);
+        }
+        for (String line : lines) {
+            text.append(line).append(newline);
+        }
+        Path file = Files.createTempFile(dir, "prices", ".txt");
+        return Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertSameDays(PriceSeries expected, PriceSeries actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.date(i), actual.date(i));
+            assertEquals(expected.open(i), actual.open(i));
+            assertEquals(expected.high(i), actual.high(i));
+            assertEquals(expected.low(i), actual.low(i));
+            assertEquals(expected.close(i), actual.close(i));
+        }
+    }
+}
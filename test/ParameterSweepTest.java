@@ -0,0 +1,93 @@
+/* Donald W. Strong
+ *
+ *  This class tests that ParameterSweep gives every combination of its grid exactly the result runStrategy gives it,
+ *  and that the grid is read the way the params file describes it.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+class ParameterSweepTest {
+
+    @Test
+    void everyResultMatchesRunStrategy() {
+        Properties props = new Properties();
+        props.setProperty("sweep.window", "10:100:15");
+        props.setProperty("sweep.buy", "0.95:0.99:0.005");
+        props.setProperty("sweep.sell", "1.00:1.02:0.0025");
+        props.setProperty("sweep.lot", "50:100:50");
+        props.setProperty("sweep.commission", "0:8:8");
+        ParameterSweep.Grid grid = new ParameterSweep.Grid(props);
+
+        for (long seed = 1; seed <= 3; seed++) {
+            PriceSeries series = TestPrices.series("S" + seed, seed, 2500);
+            List<ParameterSweep.Result> results = grid.sweep(series, (int) grid.size());
+            assertEquals(grid.size(), results.size());
+            for (ParameterSweep.Result result : results) {
+                TradingResult alone = StockTrading.runStrategy(series,
+                        new SimpleMovingAverage(result.params.window), result.params, null);
+                assertEquals(alone.transCount, result.transCount, result.params.toString());
+                assertEquals(alone.cash, result.cash, 1e-9 * Math.max(1, Math.abs(alone.cash)),
+                        result.params.toString());
+            }
+        }
+    }
+
+    @Test
+    void gridThresholdsCarryTheDefaultTolerance() {
+        Properties props = new Properties();
+        props.setProperty("sweep.buy", "0.96:0.98:0.01");
+        props.setProperty("sweep.sell", "1.01");
+        ParameterSweep.Grid grid = new ParameterSweep.Grid(props);
+        assertEquals(StrategyParameters.DEFAULT.buyThreshold, grid.buys[1]);
+        assertEquals(StrategyParameters.DEFAULT.sellThreshold, grid.sells[0]);
+
+        /* So the default combination of the sweep is the strategy getTradingInfo runs */
+        PriceSeries series = TestPrices.series("D", 11, 3000);
+        double[] buys = {grid.buys[1]};
+        double[] sells = {grid.sells[0]};
+        ParameterSweep.Result result = new ParameterSweep(series).sweep(new int[] {50}, buys, sells,
+                new int[] {100}, new double[] {8}, 1).get(0);
+        TradingResult expected = StockTrading.runStrategy(series, new SimpleMovingAverage(50),
+                StrategyParameters.DEFAULT, null);
+        assertEquals(expected.transCount, result.transCount);
+        assertEquals(expected.cash, result.cash, 1e-9 * Math.max(1, Math.abs(expected.cash)));
+    }
+
+    @Test
+    void keepsTheBestResultsHighestFirst() {
+        PriceSeries series = TestPrices.series("TOP", 5, 2000);
+        ParameterSweep.Grid grid = new ParameterSweep.Grid(new Properties());
+        List<ParameterSweep.Result> all = grid.sweep(series, (int) grid.size());
+        List<ParameterSweep.Result> top = grid.sweep(series, 10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(all.get(i).cash, top.get(i).cash);
+            assertTrue(i == 0 || top.get(i - 1).cash >= top.get(i).cash);
+        }
+        assertThrows(IllegalArgumentException.class, () -> grid.sweep(series, 0));
+    }
+
+    @Test
+    void windowsLongerThanTheSeriesGiveNoResults() {
+        PriceSeries series = TestPrices.series("SHORT", 2, 60);
+        List<ParameterSweep.Result> results = new ParameterSweep(series).sweep(new int[] {59, 100},
+                new double[] {0.99}, new double[] {1.0}, new int[] {100}, new double[] {8}, 10);
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    void rangesIncludeBothEnds() {
+        assertArrayEquals(new double[] {0.9, 0.95, 1.0}, ParameterSweep.range("0.90:1.00:0.05"));
+        assertArrayEquals(new double[] {1.00, 1.0025, 1.005}, ParameterSweep.range(" 1.00:1.005:0.0025 "));
+        assertArrayEquals(new double[] {8}, ParameterSweep.range("8"));
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.range("1:2"));
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.range("2:1:0.5"));
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.range("1:2:0"));
+    }
+}
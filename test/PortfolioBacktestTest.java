@@ -0,0 +1,127 @@
+/* Donald W. Strong
+ *
+ *  This class tests the portfolio run: with cash to spare and no limits every ticker trades as runStrategy runs it on
+ *  its own, whatever the block size the merge reads the days in, and the limits and the equity curve hold up.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PortfolioBacktestTest {
+
+    private static final StrategyParameters PARAMS = new StrategyParameters(20, 0.99, 1.005, 100, 8);
+    private static final double PLENTY = 1e9;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void unlimitedCashTradesEveryTickerAsRunStrategy() throws IOException, SQLException {
+        PriceSeries[] series = series();
+        int transCount = 0;
+        double cash = 0;
+        for (PriceSeries s : series) {
+            TradingResult alone = StockTrading.runStrategy(s, new SimpleMovingAverage(PARAMS.window), PARAMS, null);
+            transCount += alone.transCount;
+            cash += alone.cash;
+        }
+
+        try (FlatFilePriceSource source = open(series)) {
+            for (int block : new int[] {1, 30, 365, 5000}) {
+                StringWriter equity = new StringWriter();
+                PortfolioBacktest.Result result = new PortfolioBacktest(source, PARAMS, PLENTY, 0, 0, block)
+                        .run(tickers(), Integer.MIN_VALUE, Integer.MAX_VALUE, null, equity);
+                String what = "block " + block;
+                assertEquals(3, result.tickers, what);
+                assertEquals(series[0].date(0), result.firstDate, what);
+                assertEquals(series[2].date(series[2].size() - 1), result.lastDate, what);
+                assertEquals(result.lastDate - result.firstDate + 1, result.tradingDays, what);
+                assertEquals(transCount, result.transCount, what);
+                assertEquals(0, result.skippedForCash + result.skippedForLimits, what);
+                assertEquals(cash, result.cash - PLENTY, 1e-3, what);
+
+                /* A header and a line per date, ending with everything sold */
+                String[] lines = equity.toString().split("\n");
+                assertEquals(result.tradingDays + 1, lines.length, what);
+                String[] last = lines[lines.length - 1].split(",");
+                assertEquals(TradeDate.format(result.lastDate), last[0]);
+                assertEquals(0, Double.parseDouble(last[2]));
+                assertEquals("0", last[4]);
+            }
+        }
+    }
+
+    @Test
+    void limitsAndCashAreKept() throws IOException, SQLException {
+        try (FlatFilePriceSource source = open(series())) {
+            StringWriter equity = new StringWriter();
+            PortfolioBacktest.Result limited = new PortfolioBacktest(source, PARAMS, PLENTY, 1, 300, 365)
+                    .run(tickers(), Integer.MIN_VALUE, Integer.MAX_VALUE, null, equity);
+            assertTrue(limited.skippedForLimits > 0);
+            for (String line : equity.toString().split("\n")) {
+                assertTrue(line.endsWith(",0") || line.endsWith(",1") || line.startsWith("date"), line);
+            }
+
+            PortfolioBacktest.Result poor = new PortfolioBacktest(source, PARAMS, 5000, 0, 0, 365)
+                    .run(tickers(), Integer.MIN_VALUE, Integer.MAX_VALUE, null, new StringWriter());
+            assertTrue(poor.skippedForCash > 0);
+            assertTrue(poor.cash >= 0);
+        }
+    }
+
+    @Test
+    void aDateRangeLimitsTheRun() throws IOException, SQLException {
+        PriceSeries[] series = series();
+        try (FlatFilePriceSource source = open(series)) {
+            int start = series[1].date(100);
+            int end = series[1].date(399);
+            PortfolioBacktest.Result result = new PortfolioBacktest(source, PARAMS, PLENTY, 0, 0, 50)
+                    .run(Arrays.asList("B"), start, end, null, new StringWriter());
+            TradingResult alone = StockTrading.runStrategy(series[1].between(start, end),
+                    new SimpleMovingAverage(PARAMS.window), PARAMS, null);
+            assertEquals(300, result.tradingDays);
+            assertEquals(alone.transCount, result.transCount);
+            assertEquals(alone.cash, result.cash - PLENTY, 1e-3);
+
+            PortfolioBacktest.Result none = new PortfolioBacktest(source, PARAMS, PLENTY, 0, 0, 50)
+                    .run(Arrays.asList("NONE"), start, end, null, new StringWriter());
+            assertEquals(0, none.tradingDays);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new PortfolioBacktest(null, PARAMS, PLENTY, 0, 0, 0));
+    }
+
+    /* Three tickers whose histories start and end on different days */
+    private static PriceSeries[] series() {
+        PriceSeries a = TestPrices.series("A", 31, 1500);
+        PriceSeries b = TestPrices.series("B", 32, 1800);
+        PriceSeries c = TestPrices.series("C", 33, 2000);
+        return new PriceSeries[] {a.between(a.date(0), a.date(1199)), b.between(b.date(200), b.date(1799)),
+                c.between(c.date(500), c.date(1999))};
+    }
+
+    private static List<String> tickers() {
+        return Arrays.asList("A", "B", "C");
+    }
+
+    private FlatFilePriceSource open(PriceSeries[] series) throws IOException {
+        Path file = dir.resolve("prices.tsv");
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (PriceSeries s : series) {
+                TestPrices.write(out, s, Integer.MAX_VALUE, 1);
+            }
+        }
+        return FlatFilePriceSource.open(file, null);
+    }
+}
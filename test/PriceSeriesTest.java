@@ -0,0 +1,134 @@
+/* Donald W. Strong
+ *
+ *  This class tests the date range views of PriceSeries (between and firstOnOrAfter) at the edges of a series and of
+ *  its gaps, and the splits each view keeps.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PriceSeriesTest {
+
+    /* Ten trading days, 2001.01.02 through 2001.01.15, skipping the weekend of the 6th and 7th and the 13th and 14th */
+    private static final int[] DATES = dates("2001.01.02", "2001.01.03", "2001.01.04", "2001.01.05", "2001.01.08",
+            "2001.01.09", "2001.01.10", "2001.01.11", "2001.01.12", "2001.01.15");
+
+    private static final SplitEvent EARLY = new SplitEvent(DATES[1], 2, 40, 20);
+    private static final SplitEvent LATE = new SplitEvent(DATES[8], 1.5, 30, 20);
+
+    @Test
+    void rangeEndsAreInclusive() {
+        PriceSeries series = series();
+        PriceSeries view = series.between(DATES[2], DATES[6]);
+        assertEquals(5, view.size());
+        assertEquals(DATES[2], view.date(0));
+        assertEquals(DATES[6], view.date(4));
+        assertEquals(series.close(2), view.close(0));
+        assertEquals(series.open(6), view.open(4));
+    }
+
+    @Test
+    void rangeEndsInGapsTakeTheDaysInside() {
+        PriceSeries view = series().between(day("2001.01.06"), day("2001.01.14"));
+        assertEquals(DATES[4], view.date(0));
+        assertEquals(DATES[8], view.date(view.size() - 1));
+        assertTrue(series().between(day("2001.01.06"), day("2001.01.07")).isEmpty());
+    }
+
+    @Test
+    void rangesOutsideTheSeriesAreEmpty() {
+        PriceSeries series = series();
+        assertTrue(series.between(day("2000.12.01"), day("2001.01.01")).isEmpty());
+        assertTrue(series.between(day("2001.01.16"), day("2001.02.01")).isEmpty());
+        assertTrue(series.between(DATES[5], DATES[4]).isEmpty());
+        assertTrue(new PriceSeries.Builder("NONE").build().between(DATES[0], DATES[9]).isEmpty());
+    }
+
+    @Test
+    void openEndsTakeEveryDay() {
+        PriceSeries series = series();
+        assertEquals(10, series.between(Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        assertEquals(10, series.between(day("1990.01.01"), Integer.MAX_VALUE).size());
+        assertEquals(3, series.between(Integer.MIN_VALUE, DATES[2]).size());
+        assertEquals(1, series.between(DATES[9], Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void viewsKeepOnlyTheSplitsBetweenTheirDays() {
+        PriceSeries series = series();
+        assertEquals(Arrays.asList(LATE, EARLY), series.between(DATES[0], DATES[9]).splits());
+
+        /* A split belongs to the day whose close jumped, so it needs the next day in the range too */
+        assertEquals(Arrays.asList(EARLY), series.between(DATES[1], DATES[8]).splits());
+        assertEquals(Arrays.asList(LATE), series.between(DATES[2], DATES[9]).splits());
+        assertTrue(series.between(DATES[8], DATES[8]).splits().isEmpty());
+        assertTrue(series.between(DATES[2], DATES[7]).splits().isEmpty());
+    }
+
+    @Test
+    void viewsOfViews() {
+        PriceSeries view = series().between(DATES[3], DATES[8]);
+        assertEquals(1, view.firstOnOrAfter(DATES[4]));
+        assertEquals(1, view.firstOnOrAfter(day("2001.01.06")));
+        assertEquals(0, view.firstOnOrAfter(DATES[0]));
+        assertEquals(view.size(), view.firstOnOrAfter(DATES[9]));
+
+        PriceSeries inner = view.between(DATES[5], DATES[9]);
+        assertEquals(4, inner.size());
+        assertEquals(DATES[5], inner.date(0));
+        assertEquals(DATES[8], inner.date(3));
+
+        PriceSeries copy = inner.copy();
+        assertEquals(inner.size(), copy.size());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals(inner.date(i), copy.date(i));
+            assertEquals(inner.high(i), copy.high(i));
+        }
+        assertEquals(inner.splits(), copy.splits());
+    }
+
+    @Test
+    void builderGrowsAndAdjustsTheOldestDays() {
+        PriceSeries.Builder builder = new PriceSeries.Builder("GROW", 1);
+        for (int i = 99; i >= 0; i--) {
+            builder.prepend(TestPrices.FIRST_DATE + i, 2 * i + 2, 2 * i + 4, 2 * i, 2 * i + 2);
+        }
+        assertEquals(100, builder.size());
+
+        /* Halve the ten oldest days, which is what a split detector gives for a 2:1 split after the tenth day */
+        builder.adjust(10, (date, openPrice, closePrice) -> (date < TestPrices.FIRST_DATE + 10) ? 2 : 1);
+        PriceSeries series = builder.build();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(TestPrices.FIRST_DATE + i, series.date(i));
+            double divisor = (i < 10) ? 2 : 1;
+            assertEquals((2 * i + 2) / divisor, series.open(i));
+            assertEquals((2 * i + 4) / divisor, series.high(i));
+            assertEquals((2 * i) / divisor, series.low(i));
+        }
+    }
+
+    /* The ten days, closing at 10, 11, 12 ... with the two splits */
+    private static PriceSeries series() {
+        PriceSeries.Builder builder = new PriceSeries.Builder("EDGE");
+        for (int i = DATES.length - 1; i >= 0; i--) {
+            builder.prepend(DATES[i], 10 + i - 0.5, 10 + i + 1, 10 + i - 1, 10 + i);
+        }
+        List<SplitEvent> splits = Arrays.asList(LATE, EARLY);
+        return builder.build(splits);
+    }
+
+    private static int day(String date) {
+        return TradeDate.parse(date);
+    }
+
+    private static int[] dates(String... dates) {
+        int[] days = new int[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            days[i] = day(dates[i]);
+        }
+        return days;
+    }
+}
@@ -0,0 +1,107 @@
+/* Donald W. Strong
+ *
+ *  This class tests that the Monte Carlo paths trade the way runStrategy does and come out the same however many
+ *  paths are run and whichever worker runs them, and that the walk-forward windows tile the history.
+ */
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+class RobustnessEngineTest {
+
+    private static final StrategyParameters PARAMS = new StrategyParameters(20, 0.99, 1.005, 100, 8);
+
+    @Test
+    void aPathOfOneBlockIsTheRealHistory() {
+        PriceSeries series = TestPrices.series("MC", 1, 1500);
+        RobustnessEngine.Paths paths = new RobustnessEngine(series, PARAMS).monteCarlo(3, series.size(), 7);
+
+        /* With a single block every path strings the real days' gaps and moves together in order */
+        PriceSeries.Builder builder = new PriceSeries.Builder("MC", series.size());
+        double[] open = new double[series.size()];
+        double[] close = new double[series.size()];
+        open[0] = series.open(0);
+        close[0] = series.close(0);
+        for (int i = 1; i < series.size(); i++) {
+            open[i] = close[i - 1] * (series.open(i) / series.close(i - 1));
+            close[i] = open[i] * (series.close(i) / series.open(i));
+        }
+        for (int i = series.size() - 1; i >= 0; i--) {
+            builder.prepend(series.date(i), open[i], Math.max(open[i], close[i]), Math.min(open[i], close[i]),
+                    close[i]);
+        }
+        TradingResult expected = StockTrading.runStrategy(builder.build(), new SimpleMovingAverage(PARAMS.window),
+                PARAMS, null);
+
+        assertTrue(expected.transCount > 10);
+        for (int path = 0; path < 3; path++) {
+            assertEquals(expected.transCount, paths.transCount[path]);
+            assertEquals(expected.cash, paths.cash[path]);
+            assertTrue(paths.drawdown[path] >= 0);
+        }
+    }
+
+    @Test
+    void pathsDependOnlyOnTheSeedAndTheirNumber() {
+        PriceSeries series = TestPrices.series("MC", 2, 1200);
+        RobustnessEngine engine = new RobustnessEngine(series, PARAMS);
+        RobustnessEngine.Paths few = engine.monteCarlo(5, 20, 11);
+        RobustnessEngine.Paths many = engine.monteCarlo(200, 20, 11);
+        RobustnessEngine.Paths again = engine.monteCarlo(200, 20, 11);
+        RobustnessEngine.Paths other = engine.monteCarlo(5, 20, 12);
+
+        assertArrayEquals(many.cash, again.cash);
+        assertArrayEquals(many.drawdown, again.drawdown);
+        assertArrayEquals(many.transCount, again.transCount);
+        for (int path = 0; path < 5; path++) {
+            assertEquals(many.cash[path], few.cash[path]);
+            assertEquals(many.transCount[path], few.transCount[path]);
+        }
+        assertTrue(few.cash[0] != other.cash[0] || few.cash[1] != other.cash[1], "another seed, other paths");
+        assertEquals(0, engine.monteCarlo(0, 20, 11).cash.length);
+    }
+
+    @Test
+    void settingsAreChecked() {
+        RobustnessEngine engine = new RobustnessEngine(TestPrices.series("MC", 3, 300), PARAMS);
+        assertThrows(IllegalArgumentException.class, () -> engine.monteCarlo(-1, 20, 1));
+        assertThrows(IllegalArgumentException.class, () -> engine.monteCarlo(10, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RobustnessEngine(TestPrices.series("MC", 3, 21), PARAMS).monteCarlo(10, 5, 1));
+        ParameterSweep.Grid grid = new ParameterSweep.Grid(new Properties());
+        assertThrows(IllegalArgumentException.class, () -> engine.walkForward(grid, 1, 10));
+        assertThrows(IllegalArgumentException.class, () -> engine.walkForward(grid, 100, 0));
+    }
+
+    @Test
+    void walkForwardWindowsFollowEachOther() {
+        PriceSeries series = TestPrices.series("WF", 4, 1000);
+        Properties props = new Properties();
+        props.setProperty("sweep.window", "10:30:10");
+        props.setProperty("sweep.buy", "0.98:0.99:0.01");
+        ParameterSweep.Grid grid = new ParameterSweep.Grid(props);
+        RobustnessEngine.Window[] windows = new RobustnessEngine(series, PARAMS).walkForward(grid, 400, 150);
+
+        assertEquals(4, windows.length);
+        for (int w = 0; w < windows.length; w++) {
+            RobustnessEngine.Window window = windows[w];
+            assertEquals(w * 150, window.trainStart);
+            assertEquals(window.trainStart + 400, window.testStart);
+            assertEquals(window.testStart + 150, window.testEnd);
+
+            /* The parameters are the best of the train days, and are then run over the test days */
+            PriceSeries train = series.between(series.date(window.trainStart), series.date(window.testStart - 1));
+            ParameterSweep.Result best = grid.sweep(train, 1).get(0);
+            assertEquals(best.params.toString(), window.params.toString());
+            assertEquals(best.cash, window.trainCash);
+            PriceSeries test = series.between(series.date(window.testStart - best.params.window),
+                    series.date(window.testEnd - 1));
+            StrategyEngineTest.assertResult(StockTrading.runStrategy(test,
+                    new SimpleMovingAverage(best.params.window), best.params, null), window.test, "window " + w);
+        }
+    }
+}
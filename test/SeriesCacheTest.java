@@ -0,0 +1,169 @@
+/* Donald W. Strong
+ *
+ *  This class tests that the series cache only goes back to its price source for tickers it does not hold (or holds
+ *  for longer than their time to live), drops the least recently used ticker when full, and reads a ticker asked for
+ *  by several threads at once only once.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SeriesCacheTest {
+
+    @Test
+    void cachedTickersAreNotReadAgain() throws SQLException {
+        CountingSource source = new CountingSource();
+        SeriesCache cache = new SeriesCache(source, 4, 0);
+        PriceSeries first = cache.get("AAA");
+        assertSame(first, cache.get("aaa"));
+        assertEquals(1, source.reads("AAA"));
+
+        PriceSeries range = cache.get("AAA", first.date(10), first.date(19));
+        assertEquals(10, range.size());
+        assertEquals(first.date(10), range.date(0));
+        assertEquals(1, source.reads("AAA"));
+
+        cache.invalidate("Aaa");
+        cache.get("AAA");
+        assertEquals(2, source.reads("AAA"));
+    }
+
+    @Test
+    void theLeastRecentlyUsedTickerIsDropped() throws SQLException {
+        CountingSource source = new CountingSource();
+        SeriesCache cache = new SeriesCache(source, 2, 0);
+        cache.get("AAA");
+        cache.get("BBB");
+        cache.get("AAA");
+        cache.get("CCC");
+        assertEquals(2, cache.size());
+
+        cache.get("AAA");
+        assertEquals(1, source.reads("AAA"));
+        cache.get("BBB");
+        assertEquals(2, source.reads("BBB"));
+    }
+
+    @Test
+    void tickersAreReadAgainAfterTheirTimeToLive() throws SQLException, InterruptedException {
+        CountingSource source = new CountingSource();
+        SeriesCache cache = new SeriesCache(source, 4, 1);
+        cache.get("AAA");
+        cache.get("AAA");
+        assertEquals(1, source.reads("AAA"));
+        Thread.sleep(1100);
+        cache.get("AAA");
+        assertEquals(2, source.reads("AAA"));
+    }
+
+    @Test
+    void failedReadsAreNotCached() throws SQLException {
+        CountingSource source = new CountingSource();
+        SeriesCache cache = new SeriesCache(source, 4, 0);
+        source.failures.set(1);
+        assertThrows(SQLException.class, () -> cache.get("AAA"));
+        assertEquals(0, cache.size());
+        assertEquals(500, cache.get("AAA").size());
+        assertEquals(2, source.reads("AAA"));
+    }
+
+    @Test
+    void threadsAskingAtOnceShareOneRead() throws Exception {
+        CountingSource source = new CountingSource();
+        source.gate = new CountDownLatch(1);
+        SeriesCache cache = new SeriesCache(source, 4, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] gets = new Future<?>[8];
+            for (int i = 0; i < gets.length; i++) {
+                gets[i] = pool.submit(() -> cache.get("AAA"));
+            }
+            Thread.sleep(100);
+            source.gate.countDown();
+            Object first = gets[0].get(10, TimeUnit.SECONDS);
+            for (Future<?> get : gets) {
+                assertSame(first, get.get(10, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, source.reads("AAA"));
+    }
+
+    @Test
+    void settingsAreChecked() {
+        assertThrows(IllegalArgumentException.class, () -> new SeriesCache(new CountingSource(), 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new SeriesCache(new CountingSource(), 4, -1));
+        CountingSource unsafe = new CountingSource();
+        unsafe.threadSafe = false;
+        assertThrows(IllegalArgumentException.class, () -> new SeriesCache(unsafe, 4));
+        assertEquals(4, new SeriesCache(new CountingSource(), 4).capacity());
+    }
+
+    /* A price source that makes up 500 days for any ticker and counts how often each is read */
+    private static final class CountingSource implements PriceDataSource {
+        final Map<String, AtomicInteger> reads = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile CountDownLatch gate;
+        boolean threadSafe = true;
+
+        int reads(String ticker) {
+            AtomicInteger count = reads.get(ticker);
+            return (count == null) ? 0 : count.get();
+        }
+
+        public PriceSeries priceVolume(String ticker) throws SQLException {
+            reads.computeIfAbsent(ticker.toUpperCase(Locale.ROOT), t -> new AtomicInteger()).incrementAndGet();
+            if (gate != null) {
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException ex) {
+                    throw new SQLException(ex);
+                }
+            }
+            if (failures.getAndDecrement() > 0) {
+                throw new SQLException("Made up failure");
+            }
+            return TestPrices.series(ticker, ticker.hashCode(), 500);
+        }
+
+        public PriceSeries priceVolume(String ticker, String beginningDate, String endDate) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int[] firstAndLastDay(String ticker, int beginDate, int endDate) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<String> companyNames(String ticker) {
+            return Collections.emptyList();
+        }
+
+        public Map<String, String> companies() {
+            return Collections.emptyMap();
+        }
+
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+
+        public void close() {
+        }
+    }
+}
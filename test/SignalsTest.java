@@ -0,0 +1,85 @@
+/* Donald W. Strong
+ *
+ *  This class tests that the signal stage gives every day the same averages, ratios and decisions that runStrategy
+ *  works out one day at a time.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SignalsTest {
+
+    @Test
+    void averagesMatchSimpleMovingAverageBitForBit() {
+        for (long seed = 1; seed <= 4; seed++) {
+            PriceSeries series = TestPrices.series("SIG", seed, 3000);
+            double[] close = closes(series);
+            for (int window : new int[] {1, 2, 7, 50, 200}) {
+                double[] average = new double[close.length];
+                Signals.movingAverage(close, window, close.length, average);
+
+                /* The average runStrategy has on day i, once the closes of the days before it are in */
+                SimpleMovingAverage expected = new SimpleMovingAverage(window);
+                for (int i = 0; i < close.length; i++) {
+                    if (i >= window) {
+                        assertEquals(Double.doubleToLongBits(expected.value()), Double.doubleToLongBits(average[i]),
+                                "window " + window + " day " + i);
+                    }
+                    expected.update(close[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void daysAreThoseTheRulesPick() {
+        PriceSeries series = TestPrices.series("SIG", 5, 2000);
+        int days = series.size();
+        int window = 30;
+        double[] open = new double[days];
+        double[] close = closes(series);
+        for (int i = 0; i < days; i++) {
+            open[i] = series.open(i);
+        }
+        double[] closeOverOpen = new double[days];
+        double[] openOverPrevClose = new double[days];
+        double[] average = new double[days];
+        Signals.ratios(open, close, days, closeOverOpen, openOverPrevClose);
+        Signals.movingAverage(close, window, days, average);
+
+        assertEquals(0, openOverPrevClose[0]);
+        for (int i = 0; i < days; i++) {
+            assertEquals(close[i] / open[i], closeOverOpen[i]);
+            if (i > 0) {
+                assertEquals(open[i] / close[i - 1], openOverPrevClose[i]);
+            }
+        }
+
+        for (double threshold : new double[] {0.97, 0.99, 1.0, 1.01}) {
+            int[] buys = new int[days + 1];
+            int[] sells = new int[days + 1];
+            int buyCount = Signals.buyDays(close, average, closeOverOpen, threshold, window, days - 1, buys);
+            int sellCount = Signals.sellDays(open, average, openOverPrevClose, threshold, window, days - 1, sells);
+            int b = 0;
+            int s = 0;
+            for (int i = window; i < days - 1; i++) {
+                if (close[i] < average[i] && close[i] / open[i] < threshold) {
+                    assertEquals(i, buys[b++], "buy day");
+                }
+                if (open[i] > average[i] && open[i] / close[i - 1] > threshold) {
+                    assertEquals(i, sells[s++], "sell day");
+                }
+            }
+            assertEquals(b, buyCount);
+            assertEquals(s, sellCount);
+        }
+    }
+
+    private static double[] closes(PriceSeries series) {
+        double[] close = new double[series.size()];
+        for (int i = 0; i < close.length; i++) {
+            close[i] = series.close(i);
+        }
+        return close;
+    }
+}
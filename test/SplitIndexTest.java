@@ -0,0 +1,116 @@
+/* Donald W. Strong
+ *
+ *  This class tests that the split index gives the divisors and splits of the full price history it recorded, and
+ *  that it comes back the same from its file.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SplitIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void divisorsAndSplitsSurviveSavingAndLoading() throws IOException {
+        Path file = dir.resolve(SplitIndex.DEFAULT_FILE);
+        PriceSeries series = series();
+        SplitIndex index = SplitIndex.load(file);
+        assertNull(index.get("IDX"));
+        index.record(series);
+        index.save();
+
+        SplitIndex loaded = SplitIndex.load(file);
+        for (SplitIndex.TickerSplits splits : Arrays.asList(index.get("IDX"), loaded.get(" idx "))) {
+            assertSameSplits(series.splits(), splits.splits());
+            assertEquals(series.date(series.size() - 1), splits.lastDate);
+            assertEquals(series.open(series.size() - 1), splits.lastOpen);
+            assertEquals(series.close(series.size() - 1), splits.lastClose);
+
+            /* A 3:1 split on day 100 and a 2:1 split on day 300 of 400 */
+            for (int i = 0; i < series.size(); i++) {
+                double divisor = (i <= 100) ? 6 : (i <= 300) ? 2 : 1;
+                assertEquals(divisor, splits.divisorOn(series.date(i)), "day " + i);
+                assertEquals(divisor, splits.next(series.date(i), 0, 0));
+            }
+            assertEquals(6, splits.divisorOn(Integer.MIN_VALUE));
+            assertEquals(1, splits.divisorOn(Integer.MAX_VALUE));
+
+            /* A split belongs to a range that also holds the day after it */
+            assertEquals(2, splits.between(series.date(0), series.date(399)).size());
+            assertSameSplits(series.splits().subList(1, 2), splits.between(series.date(100), series.date(101)));
+            assertTrue(splits.between(series.date(50), series.date(100)).isEmpty());
+            assertSameSplits(series.splits().subList(0, 1), splits.between(series.date(101), series.date(399)));
+            assertTrue(splits.between(series.date(301), series.date(399)).isEmpty());
+        }
+    }
+
+    @Test
+    void recordingReplacesTheTickersSplits() throws IOException {
+        Path file = dir.resolve(SplitIndex.DEFAULT_FILE);
+        SplitIndex index = SplitIndex.load(file);
+        index.record(series());
+        index.record(TestPrices.series("idx", 1, 50));
+        index.record(new PriceSeries.Builder("EMPTY").build());
+        index.save();
+
+        SplitIndex loaded = SplitIndex.load(file);
+        assertTrue(loaded.get("IDX").splits().isEmpty());
+        assertEquals(1, loaded.get("IDX").divisorOn(TestPrices.FIRST_DATE));
+        assertNull(loaded.get("EMPTY"));
+    }
+
+    @Test
+    void unchangedIndexesAreNotWritten() throws IOException {
+        Path file = dir.resolve(SplitIndex.DEFAULT_FILE);
+        SplitIndex.load(file).save();
+        assertFalse(Files.exists(file));
+
+        SplitIndex index = SplitIndex.load(file);
+        index.record(series());
+        index.save();
+        Files.delete(file);
+        index.save();
+        assertFalse(Files.exists(file));
+        SplitIndex.load(dir.resolve("other.idx")).save();
+        assertFalse(Files.exists(dir.resolve("other.idx")));
+    }
+
+    @Test
+    void otherFilesAreNotSplitIndexes() throws IOException {
+        Path file = Files.write(dir.resolve(SplitIndex.DEFAULT_FILE), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> SplitIndex.load(file));
+    }
+
+    /* Four hundred days with the splits, most recent first, of a full history */
+    private static PriceSeries series() {
+        PriceSeries days = TestPrices.series("IDX", 12, 400);
+        PriceSeries.Builder builder = new PriceSeries.Builder("IDX");
+        for (int i = days.size() - 1; i >= 0; i--) {
+            builder.prepend(days.date(i), days.open(i), days.high(i), days.low(i), days.close(i));
+        }
+        return builder.build(Arrays.asList(new SplitEvent(days.date(300), 2, 40.5, 20.1),
+                new SplitEvent(days.date(100), 3, 90.25, 30.5)));
+    }
+
+    private static void assertSameSplits(List<SplitEvent> expected, List<SplitEvent> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).date, actual.get(i).date);
+            assertEquals(expected.get(i).ratio, actual.get(i).ratio);
+            assertEquals(expected.get(i).closePrice, actual.get(i).closePrice);
+            assertEquals(expected.get(i).nextOpenPrice, actual.get(i).nextOpenPrice);
+        }
+    }
+}
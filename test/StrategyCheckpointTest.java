@@ -0,0 +1,131 @@
+/* Donald W. Strong
+ *
+ *  This class tests that a strategy carried on from its checkpoint over new days ends up where runStrategy over the
+ *  whole history does, and that the checkpoints survive being saved and loaded. The prices come from flat files
+ *  (see TestPrices), rewritten with more days between updates as a database would grow.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StrategyCheckpointTest {
+
+    private static final StrategyParameters PARAMS = new StrategyParameters(20, 0.99, 1.005, 100, 8);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void newDaysGiveTheResultOfTheWholeHistory() throws IOException, SQLException {
+        PriceSeries full = TestPrices.series("CK", 3, 2000);
+        Path checkpointFile = dir.resolve("strategy.checkpoint");
+
+        StrategyCheckpoint checkpoint = StrategyCheckpoint.load(checkpointFile);
+        try (FlatFilePriceSource source = open(first(full, 1500))) {
+            StrategyCheckpoint.Update update = checkpoint.update(source, "CK", PARAMS);
+            assertTrue(update.rebuilt);
+            assertEquals(1500, update.newDays);
+            assertResult(runStrategy(source.priceVolume("CK")), update.state.result());
+        }
+        checkpoint.save();
+
+        /* A new run: the checkpoint comes back from its file and only the 500 new days are stepped through */
+        checkpoint = StrategyCheckpoint.load(checkpointFile);
+        try (FlatFilePriceSource source = open(full)) {
+            StrategyCheckpoint.Update update = checkpoint.update(source, "ck", PARAMS);
+            assertFalse(update.rebuilt);
+            assertEquals(500, update.newDays);
+            assertEquals(1, update.splitRatio);
+            assertEquals(full.date(1999), update.state.lastDate());
+            assertResult(runStrategy(source.priceVolume("CK")), update.state.result());
+
+            StrategyCheckpoint.Update again = checkpoint.update(source, "CK", PARAMS);
+            assertFalse(again.rebuilt);
+            assertEquals(0, again.newDays);
+        }
+    }
+
+    @Test
+    void otherParametersRebuildTheState() throws IOException, SQLException {
+        PriceSeries full = TestPrices.series("CK", 4, 800);
+        StrategyCheckpoint checkpoint = StrategyCheckpoint.load(dir.resolve("strategy.checkpoint"));
+        try (FlatFilePriceSource source = open(full)) {
+            checkpoint.update(source, "CK", PARAMS);
+            StrategyParameters other = PARAMS.withWindow(30);
+            StrategyCheckpoint.Update update = checkpoint.update(source, "CK", other);
+            assertTrue(update.rebuilt);
+            PriceSeries history = source.priceVolume("CK");
+            assertResult(StockTrading.runStrategy(history, new SimpleMovingAverage(30), other, null),
+                    update.state.result());
+            assertNull(checkpoint.update(source, "NONE", PARAMS));
+        }
+    }
+
+    @Test
+    void splitAfterTheCheckpointScalesTheState() throws IOException, SQLException {
+        PriceSeries full = TestPrices.series("CK", 5, 1001);
+        StrategyCheckpoint checkpoint = StrategyCheckpoint.load(dir.resolve("strategy.checkpoint"));
+        StrategyCheckpoint.TickerState state;
+        try (FlatFilePriceSource source = open(first(full, 1000))) {
+            state = checkpoint.update(source, "CK", PARAMS).state;
+        }
+        int shares = state.shares();
+        int trades = trades(state);
+        assertTrue(shares > 0, "the made up prices should leave shares held");
+
+        /* The new day is the first after a 2:1 split, so it trades at half the price of the days before it */
+        try (FlatFilePriceSource source = open(full, full.date(1000), 2)) {
+            StrategyCheckpoint.Update update = checkpoint.update(source, "CK", PARAMS);
+            assertFalse(update.rebuilt);
+            assertEquals(1, update.newDays);
+            assertEquals(2, update.splitRatio);
+        }
+
+        /* The shares held were doubled; the one new day may have traded a lot on top */
+        int traded = trades(state) - trades;
+        assertTrue(traded == 0 || traded == 1);
+        int change = state.shares() - 2 * shares;
+        assertTrue((traded == 0) ? change == 0 : Math.abs(change) == PARAMS.lotSize, "shares " + state.shares());
+    }
+
+    @Test
+    void otherFilesAreNotCheckpoints() throws IOException {
+        Path file = Files.write(dir.resolve("strategy.checkpoint"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> StrategyCheckpoint.load(file));
+    }
+
+    private FlatFilePriceSource open(PriceSeries series) throws IOException {
+        return open(series, Integer.MAX_VALUE, 1);
+    }
+
+    private FlatFilePriceSource open(PriceSeries series, int splitDate, double ratio) throws IOException {
+        Path file = Files.createTempFile(dir, "prices", ".tsv");
+        return FlatFilePriceSource.open(TestPrices.writeFile(file, series, splitDate, ratio), null);
+    }
+
+    /* Transactions made so far, leaving out the final sale result() adds for shares still held */
+    private static int trades(StrategyCheckpoint.TickerState state) {
+        return state.result().transCount - ((state.shares() > 0) ? 1 : 0);
+    }
+
+    private static PriceSeries first(PriceSeries series, int days) {
+        return series.between(series.date(0), series.date(days - 1));
+    }
+
+    private static TradingResult runStrategy(PriceSeries series) {
+        return StockTrading.runStrategy(series, new SimpleMovingAverage(PARAMS.window), PARAMS, null);
+    }
+
+    private static void assertResult(TradingResult expected, TradingResult actual) {
+        StrategyEngineTest.assertResult(expected, actual, PARAMS.toString());
+    }
+}
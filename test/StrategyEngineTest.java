@@ -0,0 +1,83 @@
+/* Donald W. Strong
+ *
+ *  This class tests that every strategy run by StrategyEngine gets exactly the result runStrategy gives it alone.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class StrategyEngineTest {
+
+    private static final int[] WINDOWS = {5, 20, 50, 120};
+    private static final double[] BUYS = {StrategyParameters.DEFAULT.buyThreshold, 0.98, 0.995};
+    private static final double[] SELLS = {StrategyParameters.DEFAULT.sellThreshold, 1.005, 1.0};
+
+    @Test
+    void fusedResultsMatchRunStrategy() {
+        for (long seed = 1; seed <= 4; seed++) {
+            PriceSeries series = TestPrices.series("T" + seed, seed, 2500);
+            StrategyEngine engine = new StrategyEngine(series);
+            List<StrategyParameters> all = new ArrayList<StrategyParameters>();
+            for (int window : WINDOWS) {
+                for (double buy : BUYS) {
+                    for (double sell : SELLS) {
+                        StrategyParameters params = new StrategyParameters(window, buy, sell, 100, 8);
+                        engine.add(params);
+                        all.add(params);
+                    }
+                }
+            }
+            assertEquals(WINDOWS.length, engine.indicators());
+
+            TradingResult[] results = engine.run();
+            int trades = 0;
+            for (int i = 0; i < all.size(); i++) {
+                StrategyParameters params = all.get(i);
+                TradingResult alone = StockTrading.runStrategy(series, new SimpleMovingAverage(params.window),
+                        params, null);
+                assertResult(alone, results[i], params + " over " + series.ticker);
+                trades += alone.transCount;
+            }
+            assertTrue(trades > 10 * all.size(), "the made up prices should trade");
+        }
+    }
+
+    @Test
+    void sharedIndicatorMatchesRunStrategy() {
+        PriceSeries series = TestPrices.series("EMA", 7, 2000);
+        ExponentialMovingAverage average = new ExponentialMovingAverage(30);
+        StrategyEngine engine = new StrategyEngine(series);
+        for (double buy : BUYS) {
+            engine.add(new StrategyParameters(1, buy, StrategyParameters.DEFAULT.sellThreshold, 100, 8), average);
+        }
+        assertEquals(1, engine.indicators());
+
+        TradingResult[] results = engine.run();
+        for (int i = 0; i < BUYS.length; i++) {
+            StrategyParameters params = new StrategyParameters(30, BUYS[i], StrategyParameters.DEFAULT.sellThreshold,
+                    100, 8);
+            assertResult(StockTrading.runStrategy(series, new ExponentialMovingAverage(30), params, null), results[i],
+                    params.toString());
+        }
+    }
+
+    @Test
+    void seriesNoLongerThanTheWindowIsNotRun() {
+        PriceSeries series = TestPrices.series("SHORT", 3, 51);
+        StrategyEngine engine = new StrategyEngine(series);
+        engine.add(StrategyParameters.DEFAULT);
+        assertFalse(engine.run()[0].executed);
+        assertFalse(StockTrading.runStrategy(series, new SimpleMovingAverage(50), StrategyParameters.DEFAULT,
+                null).executed);
+    }
+
+    static void assertResult(TradingResult expected, TradingResult actual, String what) {
+        assertEquals(expected.executed, actual.executed, what);
+        assertEquals(expected.transCount, actual.transCount, what);
+        assertEquals(expected.cash, actual.cash, what);
+    }
+}
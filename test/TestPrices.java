@@ -0,0 +1,67 @@
+/* Donald W. Strong
+ *
+ *  This class makes up price histories for the tests: a random walk of daily prices rounded to cents, the way they
+ *  are stored in the pricevolume table, from a fixed seed so every run sees the same days. A history can also be
+ *  written out as a flat file export (see FlatFilePriceSource), most recent day first, with a split on a given day:
+ *  like the pricevolume table, the file holds unadjusted prices, so the days from the split on are cheaper.
+ */
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+final class TestPrices {
+
+    /* 2001.01.02, the first day of every made up history */
+    static final int FIRST_DATE = TradeDate.parse("2001.01.02");
+
+    private TestPrices() {
+    }
+
+    /* Returns 'days' consecutive days of made up prices for 'ticker' */
+    static PriceSeries series(String ticker, long seed, int days) {
+        Random random = new Random(seed);
+        double[][] prices = new double[days][];
+        double close = 20 + random.nextInt(80);
+        for (int i = 0; i < days; i++) {
+            double open = cents(close * (1 + random.nextGaussian() * 0.012));
+            close = cents(open * (1 + random.nextGaussian() * 0.02));
+            double high = cents(Math.max(open, close) + 0.05);
+            double low = cents(Math.min(open, close) - 0.05);
+            prices[i] = new double[] {open, high, low, close};
+        }
+        PriceSeries.Builder builder = new PriceSeries.Builder(ticker, days);
+        for (int i = days - 1; i >= 0; i--) {
+            builder.prepend(FIRST_DATE + i, prices[i][0], prices[i][1], prices[i][2], prices[i][3]);
+        }
+        return builder.build();
+    }
+
+    /* Appends the days of 'series' to a flat file as tab separated lines, most recent first. Days from 'splitDate' on
+       have their prices divided by 'ratio', as they trade after a split on that day (a ratio of 1 for none).
+     */
+    static void write(Writer out, PriceSeries series, int splitDate, double ratio) throws IOException {
+        for (int i = series.size() - 1; i >= 0; i--) {
+            double factor = (series.date(i) >= splitDate) ? 1 / ratio : 1;
+            out.write(String.format(Locale.ROOT, "%s\t%s\t%.2f\t%.2f\t%.2f\t%.2f\t12345\t%.2f%n", series.ticker,
+                    TradeDate.format(series.date(i)), series.open(i) * factor, series.high(i) * factor,
+                    series.low(i) * factor, series.close(i) * factor, series.close(i) * factor));
+        }
+    }
+
+    /* Writes a flat file holding only 'series', with a header line */
+    static Path writeFile(Path file, PriceSeries series, int splitDate, double ratio) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("Ticker\tTransDate\tOpenPrice\tHighPrice\tLowPrice\tClosePrice\tVolume\tAdjustedClose\n");
+            write(out, series, splitDate, ratio);
+        }
+        return file;
+    }
+
+    private static double cents(double price) {
+        return Math.max(0.5, Math.round(price * 100) / 100.0);
+    }
+}
@@ -0,0 +1,52 @@
+/* Donald W. Strong
+ *
+ *  This class tests the conversions between YYYY.MM.DD dates and epoch days, from Strings and from the bytes the
+ *  pricevolume queries read, against java.time.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+class TradeDateTest {
+
+    @Test
+    void everyDayOfFourHundredYearsRoundTrips() {
+        LocalDate day = LocalDate.of(1800, 1, 1);
+        LocalDate end = LocalDate.of(2200, 1, 1);
+        for (; day.isBefore(end); day = day.plusDays(1)) {
+            String text = String.format("%04d.%02d.%02d", day.getYear(), day.getMonthValue(), day.getDayOfMonth());
+            int epochDay = (int) day.toEpochDay();
+            assertEquals(epochDay, TradeDate.parse(text), text);
+            assertEquals(epochDay, TradeDate.parse(text.getBytes(StandardCharsets.US_ASCII)), text);
+            assertEquals(epochDay, TradeDate.epochDay(day.getYear(), day.getMonthValue(), day.getDayOfMonth()));
+            assertEquals(text, TradeDate.format(epochDay));
+        }
+    }
+
+    @Test
+    void separatorsAndSurroundingSpaceAreIgnored() {
+        int expected = (int) LocalDate.of(2001, 6, 1).toEpochDay();
+        assertEquals(expected, TradeDate.parse("2001-06-01"));
+        assertEquals(expected, TradeDate.parse(" 2001.06.01\t"));
+        assertEquals(expected, TradeDate.parse(" 2001/06/01 \r".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void malformedDatesAreRejected() {
+        String[] malformed = {"", "2001.6.1", "2001.06.011", "2001.0a.01", "01.06.2001x", "2001.13.01", "2001.00.10",
+                "2001.06.32", "2001.06.00"};
+        for (String date : malformed) {
+            assertThrows(IllegalArgumentException.class, () -> TradeDate.parse(date), date);
+            assertThrows(IllegalArgumentException.class,
+                    () -> TradeDate.parse(date.getBytes(StandardCharsets.US_ASCII)), date);
+        }
+
+        /* Days that do not exist in their month */
+        assertThrows(IllegalArgumentException.class, () -> TradeDate.parse("2001.02.29"));
+        assertThrows(IllegalArgumentException.class, () -> TradeDate.parse("2001.04.31"));
+        assertEquals((int) LocalDate.of(2000, 2, 29).toEpochDay(), TradeDate.parse("2000.02.29"));
+    }
+}
@@ -0,0 +1,195 @@
+/* Donald W. Strong
+ *
+ *  This class tests that the CSV and BINARY transaction logs of a strategy hold the same transactions, read back from
+ *  the files, as the strategy reports making, and that the decimals are written the way printf writes them.
+ */
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionLogTest {
+
+    private static final StrategyParameters PARAMS = new StrategyParameters(20, 0.99, 1.005, 100, 8);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void csvAndBinaryLogsHoldTheStrategysTransactions() throws IOException {
+        PriceSeries series = TestPrices.series("LOG", 9, 3000);
+        TradingResult result = null;
+        for (TransactionLog.Format format : new TransactionLog.Format[] {TransactionLog.Format.CSV,
+                TransactionLog.Format.BINARY}) {
+            try (TransactionLog log = TransactionLog.open(dir.resolve(format.defaultFile), format, 64)) {
+                log.ticker(series.ticker);
+                result = StockTrading.runStrategy(series, new SimpleMovingAverage(PARAMS.window), PARAMS, log);
+            }
+        }
+        List<Row> csv = readCsv(dir.resolve(TransactionLog.Format.CSV.defaultFile));
+        List<Row> binary = readBinary(dir.resolve(TransactionLog.Format.BINARY.defaultFile));
+
+        assertTrue(result.transCount > 100, "the made up prices should trade");
+        assertEquals(result.transCount, binary.size());
+        assertEquals(binary.size(), csv.size());
+        assertEquals(result.cash, binary.get(binary.size() - 1).cash);
+
+        for (int i = 0; i < binary.size(); i++) {
+            Row expected = binary.get(i);
+            Row actual = csv.get(i);
+            String what = "transaction " + i;
+            assertEquals(expected.ticker, actual.ticker, what);
+            assertEquals(expected.kind, actual.kind, what);
+            assertEquals(expected.date, actual.date, what);
+            assertEquals(expected.shares, actual.shares, what);
+            assertEquals(expected.totalShares, actual.totalShares, what);
+            assertEquals(expected.price, actual.price, 5e-8, what);
+            assertEquals(expected.cash, actual.cash, 5e-8, what);
+            assertEquals(expected.average, actual.average, 5e-8, what);
+            assertEquals((expected.kind == TransactionLog.FINAL_SALE), (i == binary.size() - 1), what);
+        }
+    }
+
+    @Test
+    void strategiesLoggingAtOnceKeepTheirOrder() throws IOException, InterruptedException {
+        Path file = dir.resolve("batch.bin");
+        PriceSeries[] series = new PriceSeries[4];
+        TradingResult[] results = new TradingResult[series.length];
+        Thread[] threads = new Thread[series.length];
+
+        /* A small ring buffer, so the strategies keep waiting for the writer */
+        try (TransactionLog log = TransactionLog.open(file, TransactionLog.Format.BINARY, 8)) {
+            for (int t = 0; t < series.length; t++) {
+                int which = t;
+                series[t] = TestPrices.series("T" + t, 20 + t, 2000);
+                threads[t] = new Thread(() -> results[which] = StockTrading.runStrategy(series[which],
+                        new SimpleMovingAverage(PARAMS.window), PARAMS, log));
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        /* Each strategy's transactions, picked out of the shared log, are those it logs on its own */
+        List<Row> rows = readBinary(file);
+        for (int t = 0; t < series.length; t++) {
+            List<Row> own = new ArrayList<Row>();
+            for (Row row : rows) {
+                if (row.ticker.equals(series[t].ticker)) {
+                    own.add(row);
+                }
+            }
+            Path alone = dir.resolve("alone" + t + ".bin");
+            try (TransactionLog log = TransactionLog.open(alone, TransactionLog.Format.BINARY)) {
+                StockTrading.runStrategy(series[t], new SimpleMovingAverage(PARAMS.window), PARAMS, log);
+            }
+            List<Row> expected = readBinary(alone);
+            assertEquals(results[t].transCount, own.size());
+            assertEquals(expected.size(), own.size());
+            for (int i = 0; i < own.size(); i++) {
+                String what = series[t].ticker + " transaction " + i;
+                assertEquals(expected.get(i).kind, own.get(i).kind, what);
+                assertEquals(expected.get(i).date, own.get(i).date, what);
+                assertEquals(expected.get(i).totalShares, own.get(i).totalShares, what);
+                assertEquals(expected.get(i).cash, own.get(i).cash, what);
+            }
+        }
+    }
+
+    @Test
+    void decimalsAreWrittenAsPrintfWritesThem() {
+        Random random = new Random(10);
+        StringBuilder out = new StringBuilder();
+        double[] edges = {0, -0.0, 0.00049999999, 0.0000001, 0.00000005, 9.99999995, 1e7, 123456789.123456789,
+                -2.50000005, 0.99999999996, -1e-9};
+        for (int i = 0; i < 100000 + edges.length; i++) {
+            double value = (i < edges.length) ? edges[i]
+                    : Math.scalb(random.nextDouble() - 0.5, random.nextInt(50) - 20);
+            out.setLength(0);
+            TransactionLog.appendDecimal(out, value);
+            assertEquals(String.format(Locale.ROOT, "%.7f", value), out.toString(), Double.toString(value));
+        }
+    }
+
+    /* One transaction as read back from a log */
+    private static final class Row {
+        String ticker;
+        byte kind;
+        int date;
+        int shares;
+        double price;
+        int totalShares;
+        double cash;
+        double average;
+    }
+
+    private static List<Row> readCsv(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals("ticker,action,date,shares,price,total_shares,cash,average", lines.get(0));
+        List<Row> rows = new ArrayList<Row>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",", -1);
+            assertEquals(8, fields.length, line);
+            Row row = new Row();
+            row.ticker = fields[0];
+            row.kind = fields[1].equals("buy") ? TransactionLog.BUY
+                    : fields[1].equals("sell") ? TransactionLog.SELL : TransactionLog.FINAL_SALE;
+            assertEquals(row.kind == TransactionLog.FINAL_SALE, fields[1].equals("final sale"), line);
+            row.date = TradeDate.parse(fields[2]);
+            row.shares = Integer.parseInt(fields[3]);
+            row.price = Double.parseDouble(fields[4]);
+            row.totalShares = Integer.parseInt(fields[5]);
+            row.cash = Double.parseDouble(fields[6]);
+            row.average = fields[7].isEmpty() ? 0 : Double.parseDouble(fields[7]);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<Row> readBinary(Path file) throws IOException {
+        List<Row> rows = new ArrayList<Row>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            assertEquals(TransactionLog.MAGIC, in.readInt());
+            assertEquals(TransactionLog.VERSION, in.readInt());
+            String ticker = null;
+            while (true) {
+                byte kind;
+                try {
+                    kind = in.readByte();
+                }
+                catch (EOFException ex) {
+                    return rows;
+                }
+                if (kind == TransactionLog.TICKER) {
+                    ticker = in.readUTF();
+                    continue;
+                }
+                Row row = new Row();
+                row.ticker = ticker;
+                row.kind = kind;
+                row.date = in.readInt();
+                row.shares = in.readInt();
+                row.price = in.readDouble();
+                row.totalShares = in.readInt();
+                row.cash = in.readDouble();
+                if (kind == TransactionLog.FINAL_SALE) {
+                    row.average = in.readDouble();
+                }
+                rows.add(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/* Donald W. Strong
+ *
+ *  This class is the element by element part of the signal stage of Signals (the price ratios) written with the
+ *  incubating Vector API, so it is worked out a full SIMD register of days at a time on any CPU the JDK supports,
+ *  rather than wherever the JIT manages to vectorize the plain loops. The days that do not fill a whole register are
+ *  done one at a time at the end. Every value is computed with the same operations as in Signals, so the results are
+ *  exactly the same.
+ *
+ *  The moving average stays with Signals: it is summed one day at a time, as runStrategy sums it, so it has no lanes
+ *  to split. The buying and selling day lists stay with the plain loops of Signals too. The rules compare well as
+ *  vectors, but the JDK 17 Vector API has no operation to pack the days that pass into a list, and going through the
+ *  comparison result one lane at a time measured slower than the plain branch-free loop.
+ *
+ *  It is only compiled by the "vector" profile (mvn -Pvector) and only used when the program is run with
+ *  "--add-modules jdk.incubator.vector" (see Signals).
+ */
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorSignals implements Signals.Stage {
+
+    /* The widest vector of doubles the CPU handles. Loading it here makes a missing module fail on construction */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public void ratios(double[] open, double[] close, int days, double[] closeOverOpen, double[] openOverPrevClose) {
+        int lanes = SPECIES.length();
+        int i = 0;
+        for (; i + lanes <= days; i += lanes) {
+            DoubleVector.fromArray(SPECIES, close, i).div(DoubleVector.fromArray(SPECIES, open, i))
+                    .intoArray(closeOverOpen, i);
+        }
+        for (; i < days; i++) {
+            closeOverOpen[i] = close[i] / open[i];
+        }
+
+        if (days > 0) {
+            openOverPrevClose[0] = 0;
+        }
+        i = 1;
+        for (; i + lanes <= days; i += lanes) {
+            DoubleVector.fromArray(SPECIES, open, i).div(DoubleVector.fromArray(SPECIES, close, i - 1))
+                    .intoArray(openOverPrevClose, i);
+        }
+        for (; i < days; i++) {
+            openOverPrevClose[i] = open[i] / close[i - 1];
+        }
+    }
+}